@@ -0,0 +1,70 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A line of ASCII bytes viewed as characters, without copying them.
+ * Only use this for lines in which every byte is below 0x80.
+ */
+final class AsciiByteSequence implements CharSequence {
+  private ByteBuffer buf;
+  private int start;
+  private int end;
+
+  /**
+   * @param buf
+   * @param start Position of the first byte in the buffer
+   * @param end Position (exclusive) of the last byte in the buffer
+   * @return This object
+   */
+  AsciiByteSequence reset(ByteBuffer buf, int start, int end) {
+    this.buf = buf;
+    this.start = start;
+    this.end = end;
+    return this;
+  }
+
+  @Override
+  public int length() {
+    return end - start;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char)buf.get(start + index);
+  }
+
+  /**
+   * @return A String copy of the characters
+   */
+  @Override
+  public CharSequence subSequence(int from, int to) {
+    char[] result = new char[to - from];
+    for (int i=0; i<result.length; i++)
+      result[i] = (char)buf.get(start + from + i);
+    return new String(result);
+  }
+
+  @Override
+  public String toString() {
+    return subSequence(0, length()).toString();
+  }
+}
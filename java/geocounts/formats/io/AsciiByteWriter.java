@@ -0,0 +1,98 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Collects text as bytes and writes them to a channel only when the buffer is full, or on {@link #flush()}.
+ * ASCII characters, which is nearly every character of a body record, are copied straight into the buffer.
+ * Text from the first character of 0x80 or more is encoded with the charset.
+ * @see AsciiByteSequence
+ */
+final class AsciiByteWriter {
+  private final WritableByteChannel channel;
+  private final Charset charset;
+  private final byte[] bytes;
+  private int count;
+
+  /**
+   * @param channel
+   * @param charset The character set of text that is not plain ASCII
+   * @param bufferSize The number of bytes collected before they are written
+   */
+  AsciiByteWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+    this.channel = channel;
+    this.charset = charset;
+    this.bytes = new byte[Math.max(bufferSize, 16)];
+  }
+
+  void append(CharSequence text) throws IOException {
+    int n = text.length();
+    for (int i=0; i<n; i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80) {
+        append(text.subSequence(i, n).toString().getBytes(charset));
+        return;
+      }
+      if (count == bytes.length)
+        flush();
+      bytes[count++] = (byte)c;
+    }
+  }
+
+  /**
+   * @param value Bytes that are already encoded
+   * @throws IOException
+   */
+  void append(byte[] value) throws IOException {
+    if (value.length > bytes.length - count) {
+      flush();
+      if (value.length > bytes.length) {
+        write(ByteBuffer.wrap(value));
+        return;
+      }
+    }
+    System.arraycopy(value, 0, bytes, count, value.length);
+    count += value.length;
+  }
+
+  /**
+   * Writes the collected bytes to the channel
+   * @throws IOException
+   */
+  void flush() throws IOException {
+    if (count > 0) {
+      write(ByteBuffer.wrap(bytes, 0, count));
+      count = 0;
+    }
+  }
+
+  private void write(ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining())
+      channel.write(buf);
+  }
+
+  void close() throws IOException {
+    channel.close();
+  }
+}
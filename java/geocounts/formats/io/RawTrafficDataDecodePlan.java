@@ -0,0 +1,159 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.util.ArrayList;
+
+import geocounts.formats.units.UnitConverter;
+import geocounts.traffic.formats.*;
+import geocounts.traffic.formats.VehicleRec.AxleRec;
+
+/**
+ * What the header says about each body record, worked out once so that each line only has to run it:
+ * the tally part order, the V and VA fields, and the unit converter of each field that uses FU units.
+ * A plan is compiled by the decoder on the first body record after header records, and is not changed after that.
+ * @see RawTrafficDataFileTXTDecoder
+ */
+final class RawTrafficDataDecodePlan {
+  final RawTrafficDataHeader header;
+  final UnitsUsed units;
+
+  /**
+   * The parts of a T record, in order
+   */
+  final TallyPartOrder[] tallyParts;
+
+  private final ObservationField[] vehicleFields;
+  /**
+   * The converter of each field in {@link #vehicleFields}, or null if the field is set from its text
+   */
+  private final UnitConverter[] vehicleConverters;
+
+  final boolean hasAxles;
+  private final AxleFieldsEnum[] axleFields;
+  private final UnitConverter[] axleConverters;
+
+  private RawTrafficDataDecodePlan(RawTrafficDataHeader header) throws Exception {
+    this.header = header;
+    this.units = header.F.FU;
+
+    ArrayList<TallyPartOrder> parts = new ArrayList<TallyPartOrder>();
+    parts.addAll(header.T.TO.getAll());
+    if (parts.size() == 0) {
+      TallyPartOrderDef.setDefaultPartOrder(header.T, parts);
+    }
+    tallyParts = parts.toArray(new TallyPartOrder[parts.size()]);
+
+    vehicleFields = new ObservationField[header.VV.numberOfFields()];
+    vehicleConverters = new UnitConverter[vehicleFields.length];
+    for (int i=0; i<vehicleFields.length; i++) {
+      vehicleFields[i] = header.VV.getField(i);
+      if (vehicleFields[i] instanceof VehicleFieldsEnum)
+        vehicleConverters[i] = ((VehicleFieldsEnum)vehicleFields[i]).getConverter(units);
+    }
+
+    hasAxles = header.VA.isRecording();
+    axleFields = header.VA.fields.toArray(new AxleFieldsEnum[header.VA.numberOfFields()]);
+    axleConverters = new UnitConverter[axleFields.length];
+    for (int i=0; i<axleFields.length; i++)
+      axleConverters[i] = axleFields[i].getConverter(units);
+  }
+
+  /**
+   *
+   * @param header A complete header
+   * @return The plan for decoding body records with the header
+   * @throws Exception
+   */
+  static RawTrafficDataDecodePlan compile(RawTrafficDataHeader header) throws Exception {
+    return new RawTrafficDataDecodePlan(header);
+  }
+
+  /**
+   * Sets the next field of a V record
+   * @param index The index of the field in the V record
+   * @param value A tokenizer positioned on the value
+   * @param result
+   * @throws Exception
+   */
+  void setObservationField(int index, RawFmtTokenizer value, VehicleRec result) throws Exception {
+    if (index >= vehicleFields.length) {
+      if (!value.countError())
+        RawFmtUtils.throwException(this, "More V record fields than the " + vehicleFields.length + " fields in VV", value.toString());
+      return;
+    }
+    UnitConverter converter = vehicleConverters[index];
+    if (converter != null)
+      ((VehicleFieldsEnum)vehicleFields[index]).setMetric(converter.toMetric(value.parseDouble()), result);
+    else
+      vehicleFields[index].set(value, units, result);
+  }
+
+  /**
+   * Sets the next field of a V record that is decoded into columns
+   * @param index The index of the field in the V record
+   * @param value A tokenizer positioned on the value
+   * @param result
+   * @throws Exception
+   */
+  void setObservationField(int index, RawFmtTokenizer value, ObservationColumns result) throws Exception {
+    if (index >= vehicleFields.length) {
+      if (!value.countError())
+        RawFmtUtils.throwException(this, "More V record fields than the " + vehicleFields.length + " fields in VV", value.toString());
+      return;
+    }
+    result.setField(index, value, vehicleConverters[index]);
+  }
+
+  /**
+   * Sets the next field of an axle
+   * @param index The index of the field in the axle part
+   * @param value A tokenizer positioned on the value
+   * @param result
+   * @throws Exception
+   */
+  void setAxleField(int index, RawFmtTokenizer value, AxleRec result) throws Exception {
+    if (index >= axleFields.length) {
+      if (!value.countError())
+        RawFmtUtils.throwException(this, "More axle fields than the " + axleFields.length + " fields in VA", value.toString());
+      return;
+    }
+    UnitConverter converter = axleConverters[index];
+    if (converter != null)
+      axleFields[index].setMetric(converter.toMetric(value.parseDouble()), result);
+    else
+      axleFields[index].set(value, units, result);
+  }
+
+  /**
+   * Sets the next field of an axle that is decoded into columns
+   * @param index The index of the field in the axle part
+   * @param value A tokenizer positioned on the value
+   * @param result
+   * @throws Exception
+   */
+  void setAxleField(int index, RawFmtTokenizer value, ObservationColumns result) throws Exception {
+    if (index >= axleFields.length) {
+      if (!value.countError())
+        RawFmtUtils.throwException(this, "More axle fields than the " + axleFields.length + " fields in VA", value.toString());
+      return;
+    }
+    result.setAxleField(index, value, axleConverters[index]);
+  }
+}
@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import geocounts.traffic.formats.RawTrafficData;
+import geocounts.traffic.formats.RawTrafficDataSink;
 
 public abstract class RawTrafficDataFileDecoder {
   
@@ -32,18 +33,31 @@ public abstract class RawTrafficDataFileDecoder {
    * 
    * @param rawFile
    * @param addBody If false, only load the header block
-   * @param result {@link RawTrafficData}
+   * @param result {@link RawTrafficData}, or any other {@link RawTrafficDataSink}
    * @throws Exception
    */
-  public final RawTrafficDataRecordSummary load(File rawFile, boolean addBody, RawTrafficData result) throws Exception {
+  public final RawTrafficDataRecordSummary load(File rawFile, boolean addBody, RawTrafficDataSink result) throws Exception {
+    try {
+      return loadFile(rawFile, addBody, result);
+    } catch (RawTrafficDataFileDecoderException de) {
+      de.sourceFile = rawFile;
+      throw de;
+    }
+  }
+  
+  /**
+   * Reads the file with a {@link #load(BufferedReader, boolean, RawTrafficDataSink) BufferedReader}. Decoders that read files another way override this
+   * @param rawFile
+   * @param addBody If false, only load the header block
+   * @param result {@link RawTrafficData}, or any other {@link RawTrafficDataSink}
+   * @return RawTrafficDataRecordSummary
+   * @throws Exception
+   * @see RawTrafficDataFileMappedDecoder
+   */
+  protected RawTrafficDataRecordSummary loadFile(File rawFile, boolean addBody, RawTrafficDataSink result) throws Exception {
     BufferedReader br = new BufferedReader(new FileReader(rawFile));
     try {
-      try {
-        return load(br, addBody, result);
-      } catch (RawTrafficDataFileDecoderException de) {
-        de.sourceFile = rawFile;
-        throw de;
-      }
+      return load(br, addBody, result);
     } finally {
       br.close();
     }
@@ -53,14 +67,22 @@ public abstract class RawTrafficDataFileDecoder {
    * 
    * @param in An InputStream
    * @param addBody Whether to add the body, or only load the header
-   * @param result {@link RawTrafficData}
+   * @param result {@link RawTrafficData}, or any other {@link RawTrafficDataSink}
    * @return RawTrafficDataRecordSummary
    * @throws Exception
    */
-  public final RawTrafficDataRecordSummary load(InputStream in, boolean addBody, RawTrafficData result) throws Exception {
+  public final RawTrafficDataRecordSummary load(InputStream in, boolean addBody, RawTrafficDataSink result) throws Exception {
     BufferedReader br = new BufferedReader(new InputStreamReader(in));
     return load(br, addBody, result);
   }
   
-  public abstract RawTrafficDataRecordSummary load(BufferedReader br, boolean addBody, RawTrafficData result) throws Exception;
+  /**
+   * Decodes the header into the {@link RawTrafficDataSink#getHeader() sink's header} and passes each body record to the sink
+   * @param br
+   * @param addBody Whether to add the body, or only load the header
+   * @param result {@link RawTrafficData}, or any other {@link RawTrafficDataSink}
+   * @return RawTrafficDataRecordSummary
+   * @throws Exception
+   */
+  public abstract RawTrafficDataRecordSummary load(BufferedReader br, boolean addBody, RawTrafficDataSink result) throws Exception;
 }
@@ -21,22 +21,41 @@ package geocounts.formats.io;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 
 import geocounts.traffic.formats.*;
 
 
 /**
  * This object knows how to encode {@link RawTrafficData data} into the correct file format.
- * This creates a hidden {@link #pw PrintWriter}.
+ * This creates a hidden {@link #pw PrintWriter}, which is flushed after each line.
+ * Encoders that write to a {@link WritableByteChannel} instead collect lines in a large buffer, which is only written when it is full
+ * and on {@link #close()}.
  * After you have successfully constructed this object you <b>must</b> call {@link #close()}
  * @see RawTrafficDataFileTXTEncoder
  */
 public abstract class RawTrafficDataFileEncoder implements java.io.Closeable {
+  /**
+   * 1MB
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+  
+  /**
+   * Null if this encoder writes to a channel
+   */
   protected final PrintWriter pw;
+  private final AsciiByteWriter out;
   private final boolean shouldCloseWriter;
+  /**
+   * True if the CharSequence lines must go through the String versions of print and println
+   */
+  private final boolean printsStrings = overridesStringPrint();
   
   protected RawTrafficDataFileEncoder(PrintWriter printWriter, boolean shouldCloseWriter) throws Exception {
     this.pw = printWriter;
+    this.out = null;
     this.shouldCloseWriter = shouldCloseWriter;
     try {
       this.onOpen();
@@ -46,6 +65,26 @@ public abstract class RawTrafficDataFileEncoder implements java.io.Closeable {
     }
   }
   
+  /**
+   * 
+   * @param channel
+   * @param charset The character set of text that is not plain ASCII
+   * @param bufferSize The number of bytes collected before they are written to the channel
+   * @param shouldCloseChannel If true, {@link #close()} closes the channel
+   * @throws Exception
+   */
+  protected RawTrafficDataFileEncoder(WritableByteChannel channel, Charset charset, int bufferSize, boolean shouldCloseChannel) throws Exception {
+    this.pw = null;
+    this.out = new AsciiByteWriter(channel, charset, bufferSize);
+    this.shouldCloseWriter = shouldCloseChannel;
+    try {
+      this.onOpen();
+    } catch (Exception ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+  
   /**
    * As soon you successfully construct this object you <b>must</b> call {@link #close()}
    * @param file
@@ -55,21 +94,110 @@ public abstract class RawTrafficDataFileEncoder implements java.io.Closeable {
     this(new PrintWriter(file), true);
   }
   
+  /**
+   * Prints a line to the file. If a subclass overrides {@link #println(String)} the line is passed to it as a String
+   * @param data
+   * @throws IOException
+   */
+  protected void println(CharSequence data) throws IOException {
+    if (printsStrings)
+      println(data.toString());
+    else
+      appendLine(data);
+  }
+  
+  /**
+   * If a subclass overrides {@link #print(String)} the data is passed to it as a String
+   * @param data
+   * @throws IOException
+   */
+  protected void print(CharSequence data) throws IOException {
+    if (printsStrings)
+      print(data.toString());
+    else
+      append(data);
+  }
+  
   /**
    * Prints a line to the file
    * @param data
    */
   protected void println(String data) {
-    pw.print(data);
+    try {
+      appendLine(data);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+  
+  protected void print(String data) {
+    try {
+      append(data);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+  
+  private void appendLine(CharSequence data) throws IOException {
+    if (out != null) {
+      out.append(data);
+      out.append(RawFmtUtils.LINE_FEED);
+      return;
+    }
+    pw.append(data);
     pw.print(RawFmtUtils.LINE_FEED);
     pw.flush();
   }
   
-  protected void print(String data) {
-    pw.print(data);
+  private void append(CharSequence data) throws IOException {
+    if (out != null) {
+      out.append(data);
+      return;
+    }
+    pw.append(data);
     pw.flush();
   }
   
+  /**
+   * True if a subclass overrides the String versions of print or println
+   * @return
+   */
+  private boolean overridesStringPrint() {
+    for (Class<?> c = getClass(); c != RawTrafficDataFileEncoder.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("println", String.class);
+        return true;
+      } catch (NoSuchMethodException ex) {
+      }
+      try {
+        c.getDeclaredMethod("print", String.class);
+        return true;
+      } catch (NoSuchMethodException ex) {
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Prints bytes that are already encoded. Only an encoder that writes to a channel can do this
+   * @param data
+   * @throws IOException
+   */
+  void printBytes(byte[] data) throws IOException {
+    out.append(data);
+  }
+  
+  /**
+   * Writes everything printed so far
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+    if (out != null)
+      out.flush();
+    else
+      pw.flush();
+  }
+  
   protected abstract void writeHeader(RawTrafficDataFilename fileName, RawTrafficDataHeader header) throws Exception;
   
   protected abstract void writeBody(RawTrafficDataFilename fileName, RawTrafficData data) throws Exception;
@@ -88,9 +216,20 @@ public abstract class RawTrafficDataFileEncoder implements java.io.Closeable {
     } catch (Exception ex1) {
       ex = ex1;
     }
-    pw.flush();
-    if (shouldCloseWriter)
-      pw.close();
+    if (out != null) {
+      try {
+        out.flush();
+      } catch (IOException ex1) {
+        if (ex == null)
+          ex = ex1;
+      }
+      if (shouldCloseWriter)
+        out.close();
+    } else {
+      pw.flush();
+      if (shouldCloseWriter)
+        pw.close();
+    }
     if (ex != null) {
       if (ex instanceof IOException)
         throw (IOException)ex;
@@ -0,0 +1,161 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import geocounts.traffic.formats.*;
+
+/**
+ * Decodes a GEOCOUNTS file by mapping it into memory, one window at a time, so files larger than 2GB can be read.
+ * Lines that are plain ASCII, which is nearly every body record, are decoded straight from the mapped bytes.
+ * Any other line is decoded with the {@link #charset}.
+ * Lines end with \n, \r or \r\n, the same as {@link java.io.BufferedReader#readLine()}.
+ * <pre>
+ * RawTrafficData data = new RawTrafficData();
+ * new RawTrafficDataFileMappedDecoder().load(theInputFile, true, data);
+ * </pre>
+ * InputStreams and readers are decoded the same way as {@link RawTrafficDataFileTXTDecoder}.
+ * @see RawTrafficDataFileTXTDecoder
+ */
+public class RawTrafficDataFileMappedDecoder extends RawTrafficDataFileTXTDecoder {
+
+  /**
+   * 64MB
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+  /**
+   * The character set of lines that are not plain ASCII
+   */
+  public final Charset charset;
+
+  private final int windowSize;
+
+  /**
+   * Uses UTF-8 and a {@link #DEFAULT_WINDOW_SIZE 64MB window}
+   */
+  public RawTrafficDataFileMappedDecoder() {
+    this(Charset.forName("UTF-8"), DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * @param charset The character set of lines that are not plain ASCII
+   * @param windowSize The number of bytes mapped at a time. This grows if a line is longer
+   */
+  public RawTrafficDataFileMappedDecoder(Charset charset, int windowSize) {
+    this.charset = charset;
+    this.windowSize = windowSize;
+  }
+
+  @Override
+  protected RawTrafficDataRecordSummary loadFile(File rawFile, boolean addBody, RawTrafficDataSink result) throws Exception {
+    FileInputStream in = new FileInputStream(rawFile);
+    try {
+      return load(in.getChannel(), addBody, result);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   *
+   * @param channel The file to decode, from its start. This is not closed
+   * @param addBody If false, only load the header block
+   * @param result {@link RawTrafficData}, or any other {@link RawTrafficDataSink}
+   * @return RawTrafficDataRecordSummary
+   * @throws Exception
+   */
+  public RawTrafficDataRecordSummary load(FileChannel channel, boolean addBody, RawTrafficDataSink result) throws Exception {
+    RawTrafficDataRecordSummary summaryOfFile = new RawTrafficDataRecordSummary();
+    AsciiByteSequence asciiLine = new AsciiByteSequence();
+    long size = channel.size();
+    long windowStart = 0;
+    int window = windowSize;
+    try {
+      while (windowStart < size) {
+        int limit = (int)Math.min(window, size - windowStart);
+        boolean lastWindow = windowStart + limit == size;
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, limit);
+
+        int lineStart = 0;
+        while (lineStart < limit) {
+          int pos = lineStart;
+          int bits = 0;
+          byte b = 0;
+          while (pos < limit) {
+            b = buf.get(pos);
+            if ((b == '\n') || (b == '\r'))
+              break;
+            bits |= b;
+            pos++;
+          }
+          int nextLine;
+          if (pos == limit) {
+            // the last line of the file may not have a line feed
+            if (!lastWindow)
+              break;
+            nextLine = limit;
+          } else if (b == '\r') {
+            // the \n of a \r\n may be in the next window
+            if ((pos + 1 == limit) && !lastWindow)
+              break;
+            nextLine = ((pos + 1 < limit) && (buf.get(pos + 1) == '\n')) ? pos + 2 : pos + 1;
+          } else
+            nextLine = pos + 1;
+
+          summaryOfFile.linesRead++;
+          // a byte of 0x80 or more makes bits negative
+          CharSequence line = bits >= 0 ? asciiLine.reset(buf, lineStart, pos) : decode(buf, lineStart, pos);
+          if (!addLine(line, addBody, result, summaryOfFile)) {
+            completeHeader(result, summaryOfFile);
+            return summaryOfFile;
+          }
+          lineStart = nextLine;
+        }
+
+        if ((lineStart == 0) && !lastWindow) {
+          // a line is longer than the window
+          window = (int)Math.min(2L * window, Integer.MAX_VALUE);
+        } else {
+          window = windowSize;
+          windowStart += lineStart;
+        }
+      }
+      completeHeader(result, summaryOfFile);
+    } catch (Exception ex) {
+      throw new RawTrafficDataFileDecoderException(summaryOfFile.linesRead, ex);
+    }
+
+    return summaryOfFile;
+  }
+
+  private String decode(ByteBuffer buf, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    ByteBuffer line = buf.duplicate();
+    line.position(start);
+    line.get(bytes);
+    return new String(bytes, charset);
+  }
+}
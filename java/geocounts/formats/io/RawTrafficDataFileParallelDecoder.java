@@ -0,0 +1,332 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import geocounts.traffic.formats.*;
+
+/**
+ * Decodes the body of a file on several threads.
+ * The header is decoded first. The body is then split into chunks of lines, and each chunk is decoded on a {@link ForkJoinPool} by its own
+ * {@link RawTrafficDataFileTXTDecoder}, sharing the header which is only read.
+ * Records are passed to the {@link RawTrafficDataSink sink} on the calling thread, in the order they appear in the file.
+ * If {@link #sort} is set, the sink receives tallies, then monitoring events, then observations. Tallies and observations are sorted by time,
+ * monitoring events are in the order they appear in the file, as {@link RawTrafficDataFileTXTDecoder#loadFromString(String, boolean)} does.
+ * <pre>
+ * RawTrafficData rawdata = RawTrafficDataFileParallelDecoder.loadFromFile(theInputFile, true);
+ * </pre>
+ * Line numbers in a {@link RawTrafficDataFileDecoderException} are the same as if the file had been decoded on one thread.
+ * @see RawTrafficDataFileTXTDecoder
+ */
+public class RawTrafficDataFileParallelDecoder extends RawTrafficDataFileDecoder {
+
+  public static final int DEFAULT_LINES_PER_CHUNK = 16384;
+
+  /**
+   * The decoding options, copied to the decoder of each chunk
+   * @see DecodingOptions
+   */
+  public final DecodingOptions options = new DecodingOptions();
+
+  /**
+   * If true, pass tallies and observations to the sink sorted by time. This keeps every record until the whole body is decoded
+   */
+  public boolean sort;
+
+  private final ForkJoinPool pool;
+  private final int linesPerChunk;
+
+  /**
+   * Uses the common ForkJoinPool and {@link #DEFAULT_LINES_PER_CHUNK}
+   */
+  public RawTrafficDataFileParallelDecoder() {
+    this(ForkJoinPool.commonPool(), DEFAULT_LINES_PER_CHUNK);
+  }
+
+  /**
+   * @param pool The pool that decodes each chunk
+   * @param linesPerChunk The number of lines in each chunk
+   */
+  public RawTrafficDataFileParallelDecoder(ForkJoinPool pool, int linesPerChunk) {
+    this.pool = pool;
+    this.linesPerChunk = linesPerChunk;
+  }
+
+  /**
+   * Helper method to load a {@link RawTrafficData} from a file
+   * @param rawFile
+   * @param sort If true, sort the tallies and observations
+   * @return {@link RawTrafficData}
+   * @throws Exception
+   */
+  public static RawTrafficData loadFromFile(File rawFile, boolean sort) throws Exception {
+    RawTrafficData result = new RawTrafficData();
+    RawTrafficDataFileParallelDecoder decoder = new RawTrafficDataFileParallelDecoder();
+    decoder.sort = sort;
+    decoder.load(rawFile, true, result);
+    return result;
+  }
+
+  private RawTrafficDataFileTXTDecoder createDecoder() {
+    RawTrafficDataFileTXTDecoder result = new RawTrafficDataFileTXTDecoder();
+    result.options.copyFrom(options);
+    return result;
+  }
+
+  @Override
+  public RawTrafficDataRecordSummary load(BufferedReader br, boolean addBody, RawTrafficDataSink result) throws Exception {
+    RawTrafficDataRecordSummary summaryOfFile = new RawTrafficDataRecordSummary();
+
+    // the header is decoded on this thread
+    RawTrafficDataFileTXTDecoder headerDecoder = createDecoder();
+    String line = br.readLine();
+    try {
+      while (line != null) {
+        summaryOfFile.linesRead++;
+        if (headerDecoder.computeRecordType(line).isBody)
+          break;
+        headerDecoder.addLine(line, addBody, result, summaryOfFile);
+        line = br.readLine();
+      }
+      headerDecoder.completeHeader(result, summaryOfFile);
+    } catch (Exception ex) {
+      throw new RawTrafficDataFileDecoderException(summaryOfFile.linesRead, ex);
+    }
+    if ((line == null) || !addBody)
+      return summaryOfFile;
+
+    // the body is decoded in chunks, which are passed to the sink in order
+    ArrayDeque<ForkJoinTask<DecodedChunk>> decoding = new ArrayDeque<ForkJoinTask<DecodedChunk>>();
+    List<DecodedChunk> decoded = new ArrayList<DecodedChunk>();
+    int maxDecoding = 2 * Math.max(1, pool.getParallelism());
+    try {
+      int firstLine = summaryOfFile.linesRead;
+      String[] lines = new String[linesPerChunk];
+      int n = 0;
+      while (line != null) {
+        lines[n++] = line;
+        if (n == linesPerChunk) {
+          decoding.add(pool.submit(new ChunkDecoder(result.getHeader(), firstLine, lines, n)));
+          firstLine += n;
+          lines = new String[linesPerChunk];
+          n = 0;
+          while (decoding.size() >= maxDecoding)
+            addChunk(join(decoding.poll()), result, summaryOfFile, decoded);
+        }
+        line = br.readLine();
+      }
+      if (n > 0)
+        decoding.add(pool.submit(new ChunkDecoder(result.getHeader(), firstLine, lines, n)));
+      summaryOfFile.linesRead = firstLine + n - 1;
+      while (!decoding.isEmpty())
+        addChunk(join(decoding.poll()), result, summaryOfFile, decoded);
+    } finally {
+      for (ForkJoinTask<DecodedChunk> task: decoding)
+        task.cancel(false);
+    }
+
+    if (sort)
+      addSorted(decoded, result);
+    return summaryOfFile;
+  }
+
+  private static DecodedChunk join(ForkJoinTask<DecodedChunk> task) throws Exception {
+    DecodedChunk result;
+    try {
+      result = task.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception)
+        throw (Exception)cause;
+      throw ex;
+    }
+    if (result.failure != null)
+      throw result.failure;
+    return result;
+  }
+
+  private void addChunk(DecodedChunk chunk, RawTrafficDataSink result, RawTrafficDataRecordSummary summaryOfFile, List<DecodedChunk> decoded) throws Exception {
+    summaryOfFile.tallies += chunk.summary.tallies;
+    summaryOfFile.vehicles += chunk.summary.vehicles;
+    summaryOfFile.events += chunk.summary.events;
+    summaryOfFile.errors += chunk.summary.errors;
+    if (sort) {
+      decoded.add(chunk);
+      return;
+    }
+    for (RawTrafficDataTrafficElement rec: chunk.records) {
+      if (rec instanceof VehicleTallyRec)
+        result.addTally((VehicleTallyRec)rec);
+      else if (rec instanceof VehicleRec)
+        result.addObservation((VehicleRec)rec);
+      else
+        result.addMonitoringEvent((MonitoringEventRec)rec);
+    }
+  }
+
+  /**
+   * The tallies and observations of each chunk are already sorted, so the chunks are merged. Monitoring events are not sorted
+   */
+  private static void addSorted(List<DecodedChunk> decoded, RawTrafficDataSink result) throws Exception {
+    List<List<VehicleTallyRec>> tallies = new ArrayList<List<VehicleTallyRec>>();
+    List<List<MonitoringEventRec>> events = new ArrayList<List<MonitoringEventRec>>();
+    List<List<VehicleRec>> observations = new ArrayList<List<VehicleRec>>();
+    for (DecodedChunk chunk: decoded) {
+      tallies.add(chunk.tallies);
+      events.add(chunk.events);
+      observations.add(chunk.observations);
+    }
+    for (Iterator<VehicleTallyRec> it = new MergedRuns<VehicleTallyRec>(tallies); it.hasNext(); )
+      result.addTally(it.next());
+    for (List<MonitoringEventRec> chunkEvents: events)
+      for (MonitoringEventRec e: chunkEvents)
+        result.addMonitoringEvent(e);
+    for (Iterator<VehicleRec> it = new MergedRuns<VehicleRec>(observations); it.hasNext(); )
+      result.addObservation(it.next());
+  }
+
+  private static class DecodedChunk {
+    final RawTrafficDataRecordSummary summary = new RawTrafficDataRecordSummary();
+    final List<RawTrafficDataTrafficElement> records = new ArrayList<RawTrafficDataTrafficElement>();
+    final List<VehicleTallyRec> tallies = new ArrayList<VehicleTallyRec>();
+    final List<MonitoringEventRec> events = new ArrayList<MonitoringEventRec>();
+    final List<VehicleRec> observations = new ArrayList<VehicleRec>();
+    /**
+     * Set if a line could not be decoded. This is thrown on the calling thread
+     */
+    RawTrafficDataFileDecoderException failure;
+  }
+
+  private class ChunkDecoder implements Callable<DecodedChunk> {
+    private final RawTrafficDataHeader header;
+    private final int firstLine;
+    private final String[] lines;
+    private final int numberOfLines;
+
+    ChunkDecoder(RawTrafficDataHeader header, int firstLine, String[] lines, int numberOfLines) {
+      this.header = header;
+      this.firstLine = firstLine;
+      this.lines = lines;
+      this.numberOfLines = numberOfLines;
+    }
+
+    @Override
+    public DecodedChunk call() {
+      RawTrafficDataFileTXTDecoder decoder = createDecoder();
+      DecodedChunk result = new DecodedChunk();
+      for (int i=0; i<numberOfLines; i++) {
+        try {
+          EnumRecordType type = decoder.computeRecordType(lines[i]);
+          if (type == EnumRecordType.H)
+            throw new RawTrafficDataFileDecoderException(firstLine + i, "Header record found after body records have started");
+          RawTrafficDataTrafficElement rec = decoder.decodeLine(lines[i], type, header, result.summary);
+          if (rec == null)
+            continue;
+          if (!sort)
+            result.records.add(rec);
+          else if (type == EnumRecordType.T) {
+            if (header.acceptTally((VehicleTallyRec)rec))
+              result.tallies.add((VehicleTallyRec)rec);
+          } else if (type == EnumRecordType.V) {
+            // the channel may change, so this is done before sorting
+            if (header.acceptObservation((VehicleRec)rec))
+              result.observations.add((VehicleRec)rec);
+          } else
+            result.events.add((MonitoringEventRec)rec);
+        } catch (RawTrafficDataFileDecoderException ex) {
+          result.failure = ex;
+          return result;
+        } catch (Exception ex) {
+          result.failure = new RawTrafficDataFileDecoderException(firstLine + i, ex);
+          return result;
+        }
+      }
+      if (sort) {
+        TrafficElementSorter.sortTallies(result.tallies);
+        TrafficElementSorter.sortObservations(result.observations);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Iterates several sorted lists in order. Equal elements are returned in the order of their lists
+   */
+  private static class MergedRuns<T extends Comparable<? super T>> implements Iterator<T> {
+    private final PriorityQueue<Run> runs = new PriorityQueue<Run>();
+
+    MergedRuns(List<? extends List<T>> lists) {
+      for (int i=0; i<lists.size(); i++) {
+        if (!lists.get(i).isEmpty())
+          runs.add(new Run(i, lists.get(i)));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !runs.isEmpty();
+    }
+
+    @Override
+    public T next() {
+      Run run = runs.poll();
+      if (run == null)
+        throw new NoSuchElementException();
+      T result = run.list.get(run.pos++);
+      if (run.pos < run.list.size())
+        runs.add(run);
+      return result;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private class Run implements Comparable<Run> {
+      final int index;
+      final List<T> list;
+      int pos;
+
+      Run(int index, List<T> list) {
+        this.index = index;
+        this.list = list;
+      }
+
+      @Override
+      public int compareTo(Run o) {
+        int diff = list.get(pos).compareTo(o.list.get(o.pos));
+        return diff != 0 ? diff : index - o.index;
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import geocounts.traffic.formats.*;
+
+/**
+ * Encodes the body of a file on several threads.
+ * The header is written first. The body records are then split into blocks, and each block is formatted into bytes on a {@link ForkJoinPool}
+ * by its own {@link RawTrafficDataFileTXTEncoder}, sharing the header which is only read.
+ * The blocks are written on the calling thread, in the same order as {@link RawTrafficDataFileTXTEncoder}, so the file is the same.
+ * <pre>
+ * RawTrafficDataFileParallelEncoder.writeData(theOutputFile, rawdata);
+ * </pre>
+ * The records must not be changed while they are written.
+ * After you have successfully constructed this object you <b>must</b> call {@link #close()}
+ * @see RawTrafficDataFileTXTEncoder
+ * @see RawTrafficDataFileParallelDecoder
+ */
+public class RawTrafficDataFileParallelEncoder extends RawTrafficDataFileTXTEncoder {
+
+  public static final int DEFAULT_RECORDS_PER_BLOCK = 8192;
+
+  /**
+   * The buffer of the encoder that formats each block
+   */
+  private static final int BLOCK_BUFFER_SIZE = 1 << 16;
+
+  private final Charset charset;
+  private final ForkJoinPool pool;
+  private final int recordsPerBlock;
+
+  /**
+   * Writes in the platform's default character set, using the common ForkJoinPool and {@link #DEFAULT_RECORDS_PER_BLOCK}.
+   * As soon you successfully construct this object you <b>must</b> call {@link #close()}
+   * @param out
+   * @param shouldCloseStream If true, {@link #close()} closes the stream
+   * @throws Exception
+   */
+  public RawTrafficDataFileParallelEncoder(OutputStream out, boolean shouldCloseStream) throws Exception {
+    this(Channels.newChannel(out), Charset.defaultCharset(), shouldCloseStream, ForkJoinPool.commonPool(), DEFAULT_RECORDS_PER_BLOCK);
+  }
+
+  /**
+   * As soon you successfully construct this object you <b>must</b> call {@link #close()}
+   * @param channel
+   * @param charset The character set of text that is not plain ASCII
+   * @param shouldCloseChannel If true, {@link #close()} closes the channel
+   * @param pool The pool that formats each block
+   * @param recordsPerBlock The number of records in each block
+   * @throws Exception
+   */
+  public RawTrafficDataFileParallelEncoder(WritableByteChannel channel, Charset charset, boolean shouldCloseChannel, ForkJoinPool pool, int recordsPerBlock) throws Exception {
+    super(channel, charset, DEFAULT_BUFFER_SIZE, shouldCloseChannel);
+    this.charset = charset;
+    this.pool = pool;
+    this.recordsPerBlock = Math.max(1, recordsPerBlock);
+  }
+
+  /**
+   *
+   * @param out This is not closed. Everything is written to it before this returns
+   * @param fileName {@link RawTrafficDataFilename}
+   * @param data The {@link RawTrafficData data} to write
+   * @throws Exception
+   */
+  public static void writeData(OutputStream out, RawTrafficDataFilename fileName, RawTrafficData data) throws Exception {
+    RawTrafficDataFileParallelEncoder e = new RawTrafficDataFileParallelEncoder(out, false);
+    e.execWrite(fileName, data);
+  }
+
+  /**
+   *
+   * @param file The name must be a {@link RawTrafficDataFilename}
+   * @param data The {@link RawTrafficData} to write
+   * @throws Exception
+   */
+  public static void writeData(File file, RawTrafficData data) throws Exception {
+    RawTrafficDataFilename fileName = new RawTrafficDataFilename(file.getName());
+    RawTrafficDataFileParallelEncoder e = new RawTrafficDataFileParallelEncoder(new FileOutputStream(file).getChannel(), Charset.defaultCharset(), true, ForkJoinPool.commonPool(), DEFAULT_RECORDS_PER_BLOCK);
+    e.execWrite(fileName, data);
+  }
+
+  @Override
+  protected void writeBody(RawTrafficDataFilename fileName, RawTrafficData data) throws Exception {
+    // get the tally parts being set. This is deduced from the header
+    ArrayList<TallyPartOrder> tallyPartsToSet = new ArrayList<TallyPartOrder>();
+    tallyPartsToSet.addAll(data.header.T.TO.getAll());
+    if (tallyPartsToSet.size() == 0) {
+      TallyPartOrderDef.setDefaultPartOrder(data.header.T, tallyPartsToSet);
+    }
+
+    // tallies, then monitoring events, then observations, are formatted in blocks which are written in order
+    ArrayDeque<ForkJoinTask<FormattedBlock>> formatting = new ArrayDeque<ForkJoinTask<FormattedBlock>>();
+    try {
+      formatInBlocks(data.tallies(), data.header, tallyPartsToSet, formatting);
+      formatInBlocks(data.monitoringevents(), data.header, tallyPartsToSet, formatting);
+      formatInBlocks(data.observations(), data.header, tallyPartsToSet, formatting);
+      while (!formatting.isEmpty())
+        printBytes(join(formatting.poll()));
+    } finally {
+      for (ForkJoinTask<FormattedBlock> task: formatting)
+        task.cancel(false);
+    }
+  }
+
+  private void formatInBlocks(Iterable<? extends RawTrafficDataTrafficElement> records, RawTrafficDataHeader header, List<TallyPartOrder> tallyPartsToSet,
+      ArrayDeque<ForkJoinTask<FormattedBlock>> formatting) throws Exception {
+    int maxFormatting = 2 * Math.max(1, pool.getParallelism());
+    RawTrafficDataTrafficElement[] block = new RawTrafficDataTrafficElement[recordsPerBlock];
+    int n = 0;
+    for (RawTrafficDataTrafficElement rec: records) {
+      block[n++] = rec;
+      if (n == recordsPerBlock) {
+        formatting.add(pool.submit(new BlockFormatter(header, tallyPartsToSet, block, n)));
+        block = new RawTrafficDataTrafficElement[recordsPerBlock];
+        n = 0;
+        while (formatting.size() >= maxFormatting)
+          printBytes(join(formatting.poll()));
+      }
+    }
+    if (n > 0)
+      formatting.add(pool.submit(new BlockFormatter(header, tallyPartsToSet, block, n)));
+  }
+
+  private static byte[] join(ForkJoinTask<FormattedBlock> task) throws Exception {
+    FormattedBlock result;
+    try {
+      result = task.get();
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception)
+        throw (Exception)cause;
+      throw ex;
+    }
+    if (result.failure != null)
+      throw result.failure;
+    return result.bytes;
+  }
+
+  private static class FormattedBlock {
+    byte[] bytes;
+    /**
+     * Set if a record could not be formatted. This is thrown on the calling thread
+     */
+    Exception failure;
+  }
+
+  private class BlockFormatter implements Callable<FormattedBlock> {
+    private final RawTrafficDataHeader header;
+    private final List<TallyPartOrder> tallyPartsToSet;
+    private final RawTrafficDataTrafficElement[] records;
+    private final int numberOfRecords;
+
+    BlockFormatter(RawTrafficDataHeader header, List<TallyPartOrder> tallyPartsToSet, RawTrafficDataTrafficElement[] records, int numberOfRecords) {
+      this.header = header;
+      this.tallyPartsToSet = tallyPartsToSet;
+      this.records = records;
+      this.numberOfRecords = numberOfRecords;
+    }
+
+    @Override
+    public FormattedBlock call() {
+      FormattedBlock result = new FormattedBlock();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_BUFFER_SIZE);
+      try {
+        // each block has its own encoder, so its dates and lines are not shared with other threads
+        RawTrafficDataFileTXTEncoder formatter = new RawTrafficDataFileTXTEncoder(Channels.newChannel(bytes), charset, BLOCK_BUFFER_SIZE, false);
+        StringBuilder line = new StringBuilder(256);
+        try {
+          for (int i=0; i<numberOfRecords; i++) {
+            RawTrafficDataTrafficElement rec = records[i];
+            line.setLength(0);
+            if (rec instanceof VehicleTallyRec)
+              formatter.toTally(header, (VehicleTallyRec)rec, tallyPartsToSet, line);
+            else if (rec instanceof VehicleRec)
+              formatter.toVehicle(header, (VehicleRec)rec, line);
+            else
+              formatter.toMonitoringEvent(header, (MonitoringEventRec)rec, line);
+            formatter.println(line);
+          }
+        } finally {
+          formatter.close();
+        }
+        result.bytes = bytes.toByteArray();
+      } catch (Exception ex) {
+        result.failure = ex;
+      }
+      return result;
+    }
+  }
+}
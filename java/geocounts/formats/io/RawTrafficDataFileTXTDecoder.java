@@ -22,7 +22,6 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
-import java.util.ArrayList;
 
 
 import geocounts.traffic.formats.*;
@@ -39,6 +38,27 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
    */
   public final DecodingOptions options = new DecodingOptions();
   
+  /**
+   * Reused for each body line, so a decoder must not be shared between threads
+   */
+  private final RawFmtTokenizer bodyParts = new RawFmtTokenizer();
+  
+  /**
+   * Parses the time of each body line
+   */
+  private final RawFmtDateCodec dates = new RawFmtDateCodec();
+  
+  /**
+   * Compiled from the header on the first body record, and discarded when a header record is decoded
+   */
+  private RawTrafficDataDecodePlan plan = null;
+  
+  private RawTrafficDataDecodePlan getPlan(RawTrafficDataHeader header) throws Exception {
+    if ((plan == null) || (plan.header != header))
+      plan = RawTrafficDataDecodePlan.compile(header);
+    return plan;
+  }
+  
   /**
    * @deprecated Use {@link #loadFromString(String, boolean, boolean)}
    */
@@ -103,7 +123,7 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
     return new RawTrafficDataFileTXTDecoder();
   }
   
-  public EnumRecordType computeRecordType(String line) {
+  public EnumRecordType computeRecordType(CharSequence line) {
     EnumRecordType type = EnumRecordType.X;
     if (line.length() > 2) {
       if (line.charAt(2) == ' ') {
@@ -111,13 +131,19 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
       } else if (line.charAt(0) == '#') {
         type = EnumRecordType.X;
       } else {
-        type = EnumRecordType.valueOf(line.substring(0, 1));
+        type = EnumRecordType.fromName(line.charAt(0));
+        if (type == null) {
+          if (!options.lenient)
+            throw new IllegalArgumentException("No record type " + line.charAt(0));
+          // decoded as a comment, and counted as an error
+          type = EnumRecordType.X;
+        }
       }
     }
     return type;
   }
 
-  public RawTrafficDataRecordSummary load(Iterable<String> lines, boolean addBody, RawTrafficData result) throws Exception {
+  public RawTrafficDataRecordSummary load(Iterable<String> lines, boolean addBody, RawTrafficDataSink result) throws Exception {
     RawTrafficDataRecordSummary summaryOfFile = new RawTrafficDataRecordSummary();
 
     for (String line: lines) {
@@ -125,12 +151,13 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
       if (!doContinue)
         break;
     }
+    completeHeader(result, summaryOfFile);
     
     return summaryOfFile;
   }
   
   @Override
-  public RawTrafficDataRecordSummary load(BufferedReader br, boolean addBody, RawTrafficData result) throws Exception {
+  public RawTrafficDataRecordSummary load(BufferedReader br, boolean addBody, RawTrafficDataSink result) throws Exception {
     RawTrafficDataRecordSummary summaryOfFile = new RawTrafficDataRecordSummary();
     String line = br.readLine();
     try {
@@ -141,6 +168,7 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
           break;
         line = br.readLine();
       }
+      completeHeader(result, summaryOfFile);
     } catch (Exception ex) {
       throw new RawTrafficDataFileDecoderException(summaryOfFile.linesRead, ex);
     }
@@ -148,19 +176,103 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
     return summaryOfFile;
   }
   
-  private boolean addLine(String line, boolean addBody, RawTrafficData result, RawTrafficDataRecordSummary summaryOfFile) throws Exception {
+  boolean addLine(CharSequence line, boolean addBody, RawTrafficDataSink result, RawTrafficDataRecordSummary summaryOfFile) throws Exception {
     EnumRecordType type = computeRecordType(line);
+    if (type.isBody)
+      completeHeader(result, summaryOfFile);
     if (type.isBody && !addBody)
       return false;
+    if ((type == EnumRecordType.V) && (result instanceof ObservationColumns)) {
+      addObservation(line, (ObservationColumns)result, summaryOfFile);
+      return true;
+    }
 
+    RawTrafficDataTrafficElement rec = decodeLine(line, type, result.getHeader(), summaryOfFile);
+    if (rec == null)
+      return true;
+    switch (type) {
+    case T: {
+      result.addTally((VehicleTallyRec)rec);
+      break;
+    }
+    case V: {
+      result.addObservation((VehicleRec)rec);
+      break;
+    }
+    case M: {
+      result.addMonitoringEvent((MonitoringEventRec)rec);
+      break;
+    }
+    default:
+      break;
+    }
+    return true;
+  }
+  
+  /**
+   * Decodes an observation record straight into columns, as {@link #decodeLine(CharSequence, EnumRecordType, RawTrafficDataHeader, RawTrafficDataRecordSummary) decodeLine} would decode it into a {@link VehicleRec}
+   */
+  private void addObservation(CharSequence line, ObservationColumns result, RawTrafficDataRecordSummary summaryOfFile) throws Exception {
+    try {
+      decodeObservationRec(line, result.getHeader(), result);
+    } catch (Exception ex) {
+      result.cancelObservation();
+      if (!options.lenient)
+        throw ex;
+      bodyParts.takeErrors();
+      summaryOfFile.errors++;
+      return;
+    }
+    if (options.lenient)
+      summaryOfFile.errors += bodyParts.takeErrors();
+    summaryOfFile.vehicles++;
+  }
+  
+  /**
+   * Tells the sink the header is complete, if it has not already been told
+   */
+  void completeHeader(RawTrafficDataSink result, RawTrafficDataRecordSummary summaryOfFile) throws Exception {
+    if (!summaryOfFile.headerComplete) {
+      summaryOfFile.headerComplete = true;
+      result.onHeaderComplete();
+    }
+  }
+  
+  /**
+   * Decodes one line. Header lines are decoded into the header, comments are ignored.
+   * @param line The line to decode
+   * @param type The {@link #computeRecordType(CharSequence) record type} of the line
+   * @param header The header being decoded. Body records are decoded using this header
+   * @param summaryOfFile Counts of the records decoded so far
+   * @return The body record, or null if the line is a header or comment, or a body record that was skipped in {@link DecodingOptions#lenient lenient} mode
+   * @throws Exception
+   */
+  RawTrafficDataTrafficElement decodeLine(CharSequence line, EnumRecordType type, RawTrafficDataHeader header, RawTrafficDataRecordSummary summaryOfFile) throws Exception {
+    if (type.isBody && options.lenient) {
+      RawTrafficDataTrafficElement result;
+      try {
+        result = decodeBodyLine(line, type, header, summaryOfFile);
+      } catch (Exception ex) {
+        bodyParts.takeErrors();
+        summaryOfFile.errors++;
+        return null;
+      }
+      summaryOfFile.errors += bodyParts.takeErrors();
+      return result;
+    }
+    
     switch (type) {
     case X: {
       // ignoring comments
 //        result.comments.add(line);
+      if ((line.length() > 2) && (line.charAt(0) != '#') && (line.charAt(0) != 'X'))
+        // an unknown record type in lenient mode
+        summaryOfFile.errors++;
       break;
     }
     case H: {
-      Exception hadError = decodeHeaderLine(line, result.header);
+      plan = null;
+      Exception hadError = decodeHeaderLine(line.toString(), header);
       if (hadError != null)
         throw hadError;
       summaryOfFile.headers++;
@@ -169,26 +281,31 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
       }
       break;
     }
+    default:
+      return decodeBodyLine(line, type, header, summaryOfFile);
+    }
+    return null;
+  }
+  
+  private RawTrafficDataTrafficElement decodeBodyLine(CharSequence line, EnumRecordType type, RawTrafficDataHeader header, RawTrafficDataRecordSummary summaryOfFile) throws Exception {
+    switch (type) {
     case T: {
-      VehicleTallyRec tally = decodeTallyRec(line, result.header);
+      VehicleTallyRec tally = decodeTallyRec(line, header);
       summaryOfFile.tallies++;
-      result.addTally(tally);
-      break;
+      return tally;
     }
     case V: {
-      VehicleRec vehicle = decodeObservationRec(line, result.header);
+      VehicleRec vehicle = decodeObservationRec(line, header);
       summaryOfFile.vehicles++;
-      result.addObservation(vehicle);
-      break;
+      return vehicle;
     }
     case M: {
-      MonitoringEventRec event = decodeMonitoringEventRec(line, result.header);
+      MonitoringEventRec event = decodeMonitoringEventRec(line, header);
       summaryOfFile.events++;
-      result.addMonitoringEvent(event);
-      break;
+      return event;
     }
     }
-    return true;
+    return null;
   }
   
   public EnumHeaderRecords decodeHeaderLine(RawTrafficDataHeader result, String line) throws Exception {
@@ -209,25 +326,21 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
   /**
    * Decodes an {@link VehicleTallyRec tally} record. You do not need to call this directly
    */
-  public VehicleTallyRec decodeTallyRec(String line, RawTrafficDataHeader header) throws Exception {
-    ArrayList<TallyPartOrder> tallyPartsToSet = new ArrayList<TallyPartOrder>();
-    tallyPartsToSet.addAll(header.T.TO.getAll());
-    if (tallyPartsToSet.size() == 0) {
-      TallyPartOrderDef.setDefaultPartOrder(header.T, tallyPartsToSet);
-    }
+  public VehicleTallyRec decodeTallyRec(CharSequence line, RawTrafficDataHeader header) throws Exception {
+    TallyPartOrder[] tallyPartsToSet = getPlan(header).tallyParts;
     
-    String[] PARTS  = RawFmtUtils.split(line, ';');
-    String[] referencePART = RawFmtUtils.split(PARTS[1], ',');
+    RawFmtTokenizer PARTS = bodyParts.reset(line, ';').setLenient(options.lenient);
+    PARTS.nextToken();
+    RawFmtTokenizer referencePART = PARTS.nextToken().split(',');
     
-    int channelID = Integer.parseInt(referencePART[3]);
-    int period = Integer.parseInt(referencePART[2]);
-    long time = header.getTallyDateFormat().parse(referencePART[0] + "," + referencePART[1]).getTime();
+    int timeStart = referencePART.nextToken().start();
+    long time = dates.parseTallyTime(line, timeStart, referencePART.nextToken().end());
+    int period = referencePART.nextToken().parseInt();
+    int channelID = referencePART.nextToken().parseInt();
     VehicleTallyRec tally = header.T.create(channelID, period, time);
     
-    int tallysetparts = 2;
     for (TallyPartOrder setProp: tallyPartsToSet) {
-      setProp.setTally(PARTS[tallysetparts], header, options, tally);
-      tallysetparts++;
+      setProp.setTally(PARTS.nextToken().split(','), header, options, tally);
     }
     return tally;
   }
@@ -265,31 +378,33 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
   /**
    * Decodes an {@link VehicleRec observation} record. You do not need to call this directly
    */
-  public VehicleRec decodeObservationRec(String line, RawTrafficDataHeader header) throws Exception {
-    ParsedVehicleStrings parsedRec = createParsedVehicleStrings(line);
+  public VehicleRec decodeObservationRec(CharSequence line, RawTrafficDataHeader header) throws Exception {
+    RawTrafficDataDecodePlan plan = getPlan(header);
+    RawFmtTokenizer PARTS = bodyParts.reset(line, ';').setLenient(options.lenient);
+    PARTS.nextToken();
+    RawFmtTokenizer referencePART = PARTS.nextToken().split(',');
 
-    java.util.Date time = header.getObservationDateFormat().parse(parsedRec.referencePART[0] + "," + parsedRec.referencePART[1]);
-    int channelID = parsedRec.getChannelID();
+    long time = nextObservationTime(line, referencePART);
+    int channelID = referencePART.nextToken().parseInt();
     
-    VehicleRec result = header.VV.create(channelID, time.getTime());
+    VehicleRec result = header.VV.create(channelID, time);
     
     // vehicle parts
-    if (parsedRec.vehiclePART != null) {
-      for (int i=0; i<parsedRec.vehiclePART.length; i++) {
-        header.VV.getField(i).set(parsedRec.vehiclePART[i], header.F.FU, result);
+    if (PARTS.next()) {
+      RawFmtTokenizer vehiclePART = PARTS.split(',');
+      for (int i=0; vehiclePART.next(); i++) {
+        plan.setObservationField(i, vehiclePART, result);
       }
     }
     
     // axle parts
-    if (header.VA.isRecording()) {
-      int numAxleParts = parsedRec.getNumberOfAxleParts();
-
-      for (int axlePartID=0; axlePartID<numAxleParts; axlePartID++) {
-        String[] axlePART = RawFmtUtils.split(parsedRec.getAxleParts(axlePartID), ',');
-        if (axlePART.length > 0) {
+    if (plan.hasAxles) {
+      while (PARTS.next()) {
+        if (!PARTS.isEmpty()) {
+          RawFmtTokenizer axlePART = PARTS.split(',');
           VehicleRec.AxleRec axle = result.addAxle();
-          for (int i=0; i<axlePART.length; i++) {
-            header.VA.fields.get(i).set(axlePART[i], header.F.FU, axle);
+          for (int i=0; axlePART.next(); i++) {
+            plan.setAxleField(i, axlePART, axle);
           }
         }
       }
@@ -298,23 +413,74 @@ public class RawTrafficDataFileTXTDecoder extends RawTrafficDataFileDecoder {
     return result;
   }
   
-  public MonitoringEventRec decodeMonitoringEventRec(String line, RawTrafficDataHeader header) throws Exception {
-    String[] PARTS  = RawFmtUtils.split(line, ';');
-    String[] timePART = RawFmtUtils.split(PARTS[1], ',');
-    java.util.Date time = header.getObservationDateFormat().parse(timePART[0] + "," + timePART[1]);
-    MonitoringEventRec result = header.newMonitoringEventRec(time.getTime());
-    try {
-      String eventType = PARTS[2].toLowerCase();
+  /**
+   * Decodes an {@link VehicleRec observation} record into columns, without creating a {@link VehicleRec}. You do not need to call this directly
+   * @return True if the header accepts the observation and it was kept
+   */
+  public boolean decodeObservationRec(CharSequence line, RawTrafficDataHeader header, ObservationColumns result) throws Exception {
+    RawTrafficDataDecodePlan plan = getPlan(header);
+    RawFmtTokenizer PARTS = bodyParts.reset(line, ';').setLenient(options.lenient);
+    PARTS.nextToken();
+    RawFmtTokenizer referencePART = PARTS.nextToken().split(',');
+
+    long time = nextObservationTime(line, referencePART);
+    int channelID = referencePART.nextToken().parseInt();
+    
+    result.beginObservation(channelID, time);
+    
+    // vehicle parts
+    if (PARTS.next()) {
+      RawFmtTokenizer vehiclePART = PARTS.split(',');
+      for (int i=0; vehiclePART.next(); i++) {
+        plan.setObservationField(i, vehiclePART, result);
+      }
+    }
+    
+    // axle parts
+    if (plan.hasAxles) {
+      while (PARTS.next()) {
+        if (!PARTS.isEmpty()) {
+          RawFmtTokenizer axlePART = PARTS.split(',');
+          result.beginAxle();
+          for (int i=0; axlePART.next(); i++) {
+            plan.setAxleField(i, axlePART, result);
+          }
+        }
+      }
+    }
+    
+    return result.endObservation();
+  }
+  
+  public MonitoringEventRec decodeMonitoringEventRec(CharSequence line, RawTrafficDataHeader header) throws Exception {
+    RawFmtTokenizer PARTS = bodyParts.reset(line, ';').setLenient(options.lenient);
+    PARTS.nextToken();
+    long time = nextObservationTime(line, PARTS.nextToken().split(','));
+    MonitoringEventRec result = header.newMonitoringEventRec(time);
+    if (PARTS.next()) {
+      String eventType = PARTS.toString().toLowerCase();
       if (eventType.startsWith(TextHeaderEscape.XX)) {
         result.setEventTypeUserDefined(eventType.substring(3));
       } else
-        result.setEventType(MonitoringEventType.valueOf(eventType));
-    } catch (Exception ex) {
+        // an unknown type is a comment
+        result.setEventType(MonitoringEventType.fromId(eventType));
+      if (PARTS.next())
+        result.text = PARTS.toString();
+    } else
       result.setEventType(MonitoringEventType.comment);
-    }
-    if (PARTS.length > 3)
-      result.text = PARTS[3];
     return result;
   }
+  
+  /**
+   * 
+   * @param line
+   * @param referencePART Positioned before the date
+   * @return The time in the date and time tokens
+   * @throws Exception
+   */
+  private long nextObservationTime(CharSequence line, RawFmtTokenizer referencePART) throws Exception {
+    int from = referencePART.nextToken().start();
+    return dates.parseObservationTime(line, from, referencePART.nextToken().end());
+  }
 
 }
@@ -20,7 +20,13 @@ package geocounts.formats.io;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -29,11 +35,24 @@ import geocounts.traffic.formats.Equipment.EquipmentRecBase;
 
 /**
  * Writes the GEOCOUNTS text file from raw count data. The simplest method to call is {@link #writeData(File, RawTrafficData)}
+ * <br />
+ * Encoders made with an OutputStream or a {@link WritableByteChannel} write through a large buffer instead of flushing each line,
+ * and format each body record into the same StringBuilder.
  * @see RawTrafficData
  *
  */
 public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
 
+  /**
+   * Formats the time of each body line
+   */
+  private final RawFmtDateCodec dates = new RawFmtDateCodec();
+  
+  /**
+   * Each body line is formatted in this
+   */
+  protected final StringBuilder line = new StringBuilder(256);
+
   /**
    * As soon you successfully construct this object you <b>must</b> call {@link #close()}
    * @param file
@@ -47,6 +66,29 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
     super(out, shouldCloseWriter);
   }
   
+  /**
+   * Writes in the platform's default character set through a {@link #DEFAULT_BUFFER_SIZE 1MB buffer}.
+   * As soon you successfully construct this object you <b>must</b> call {@link #close()}
+   * @param out
+   * @param shouldCloseStream If true, {@link #close()} closes the stream
+   * @throws Exception
+   */
+  public RawTrafficDataFileTXTEncoder(OutputStream out, boolean shouldCloseStream) throws Exception {
+    this(Channels.newChannel(out), Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, shouldCloseStream);
+  }
+  
+  /**
+   * As soon you successfully construct this object you <b>must</b> call {@link #close()}
+   * @param channel
+   * @param charset The character set of text that is not plain ASCII
+   * @param bufferSize The number of bytes collected before they are written to the channel
+   * @param shouldCloseChannel If true, {@link #close()} closes the channel
+   * @throws Exception
+   */
+  public RawTrafficDataFileTXTEncoder(WritableByteChannel channel, Charset charset, int bufferSize, boolean shouldCloseChannel) throws Exception {
+    super(channel, charset, bufferSize, shouldCloseChannel);
+  }
+  
   /**
    * 
    * @param out You do not need to call close on this object
@@ -96,6 +138,18 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
     RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(out, false);
     e.execWrite(fileName, data);
   }
+  
+  /**
+   * 
+   * @param out This is not closed. Everything is written to it before this returns
+   * @param fileName {@link RawTrafficDataFilename}
+   * @param data The {@link RawTrafficData data} to write
+   * @throws Exception
+   */
+  public static void writeData(OutputStream out, RawTrafficDataFilename fileName, RawTrafficData data) throws Exception {
+    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(out, false);
+    e.execWrite(fileName, data);
+  }
 
   /**
    * 
@@ -105,11 +159,84 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
    */
   public static void writeData(File file, RawTrafficData data) throws Exception {
     RawTrafficDataFilename fileName = new RawTrafficDataFilename(file.getName());
-    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(file);
+    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(new FileOutputStream(file).getChannel(), Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, true);
     e.execWrite(fileName, data);
   }
   
-  private void execWrite(RawTrafficDataFilename fileName, RawTrafficData data) throws Exception {
+  /**
+   * 
+   * @param out This is not closed. Everything is written to it before this returns
+   * @param fileName {@link RawTrafficDataFilename}
+   * @param data The {@link ObservationColumns observations}, with the header, tallies and monitoring events in {@link ObservationColumns#data}
+   * @throws Exception
+   */
+  public static void writeData(OutputStream out, RawTrafficDataFilename fileName, ObservationColumns data) throws Exception {
+    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(out, false);
+    e.execWrite(fileName, data);
+  }
+
+  /**
+   * 
+   * @param file The name must be a {@link RawTrafficDataFilename}
+   * @param data The {@link ObservationColumns observations}, with the header, tallies and monitoring events in {@link ObservationColumns#data}
+   * @throws Exception
+   */
+  public static void writeData(File file, ObservationColumns data) throws Exception {
+    RawTrafficDataFilename fileName = new RawTrafficDataFilename(file.getName());
+    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(new FileOutputStream(file).getChannel(), Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, true);
+    e.execWrite(fileName, data);
+  }
+  
+  private void execWrite(RawTrafficDataFilename fileName, ObservationColumns data) throws Exception {
+    try {
+      writeHeader(fileName, data.data.header);
+      // tallies and monitoring events, then the observations in the columns
+      writeBody(fileName, data.data);
+      writeObservations(data.data.header, data);
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * 
+   * @param out This is not closed. Everything is written to it before this returns
+   * @param fileName {@link RawTrafficDataFilename}
+   * @param data The {@link TallyColumns tallies}, with the header, observations and monitoring events in {@link TallyColumns#data}
+   * @throws Exception
+   */
+  public static void writeData(OutputStream out, RawTrafficDataFilename fileName, TallyColumns data) throws Exception {
+    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(out, false);
+    e.execWrite(fileName, data);
+  }
+
+  /**
+   * 
+   * @param file The name must be a {@link RawTrafficDataFilename}
+   * @param data The {@link TallyColumns tallies}, with the header, observations and monitoring events in {@link TallyColumns#data}
+   * @throws Exception
+   */
+  public static void writeData(File file, TallyColumns data) throws Exception {
+    RawTrafficDataFilename fileName = new RawTrafficDataFilename(file.getName());
+    RawTrafficDataFileTXTEncoder e = new RawTrafficDataFileTXTEncoder(new FileOutputStream(file).getChannel(), Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, true);
+    e.execWrite(fileName, data);
+  }
+  
+  private void execWrite(RawTrafficDataFilename fileName, TallyColumns data) throws Exception {
+    try {
+      writeHeader(fileName, data.data.header);
+      // the tallies in the columns, then monitoring events and observations
+      writeTallies(data.data.header, data);
+      writeBody(fileName, data.data);
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Writes the header and the body, then closes this encoder
+   */
+  void execWrite(RawTrafficDataFilename fileName, RawTrafficData data) throws Exception {
     try {
       // write the header
       writeHeader(fileName, data.header);
@@ -131,15 +258,51 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
     
     // print tally records
     for (VehicleTallyRec tally: data.tallies()) {
-      println(toTally(data.header, tally, tallyPartsToSet));
+      line.setLength(0);
+      toTally(data.header, tally, tallyPartsToSet, line);
+      println(line);
     }
     // print monitoring events
     for (MonitoringEventRec event: data.monitoringevents()) {
-      println(toMonitoringEvent(data.header, event));
+      line.setLength(0);
+      toMonitoringEvent(data.header, event, line);
+      println(line);
     }
     // print observations
     for (VehicleRec veh: data.observations()) {
-      println(toVehicle(data.header, veh));
+      line.setLength(0);
+      toVehicle(data.header, veh, line);
+      println(line);
+    }
+  }
+  
+  /**
+   * Prints the tallies of {@link TallyColumns}
+   */
+  protected void writeTallies(RawTrafficDataHeader header, TallyColumns tallies) throws Exception {
+    ArrayList<TallyPartOrder> tallyPartsToSet = new ArrayList<TallyPartOrder>();
+    tallyPartsToSet.addAll(header.T.TO.getAll());
+    if (tallyPartsToSet.size() == 0) {
+      TallyPartOrderDef.setDefaultPartOrder(header.T, tallyPartsToSet);
+    }
+    
+    for (int row=0; row<tallies.size(); row++) {
+      line.setLength(0);
+      toTally(header, tallies.get(row), tallyPartsToSet, line);
+      println(line);
+    }
+  }
+  
+  /**
+   * Prints the observations of {@link ObservationColumns}. One {@link VehicleRec} is reused for every observation
+   */
+  protected void writeObservations(RawTrafficDataHeader header, ObservationColumns observations) throws Exception {
+    VehicleRec veh = null;
+    for (int row=0; row<observations.size(); row++) {
+      veh = observations.copyTo(row, veh);
+      line.setLength(0);
+      toVehicle(header, veh, line);
+      println(line);
     }
   }
   
@@ -194,7 +357,7 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
     */
   }
 
-  private void printHeaderLine(IdDesc id, String[] values, boolean shouldEscape) {
+  private void printHeaderLine(IdDesc id, String[] values, boolean shouldEscape) throws IOException {
     println(id.getId() + " " + toHeaderString(values, shouldEscape));
   }
 
@@ -218,9 +381,21 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
   
   public String toVehicle(RawTrafficDataHeader header, VehicleRec veh) throws Exception {
     StringBuilder result = new StringBuilder();
+    toVehicle(header, veh, result);
+    return result.toString();
+  }
+  
+  /**
+   * 
+   * @param header
+   * @param veh
+   * @param result Appended with the V record, without a line feed
+   * @throws Exception
+   */
+  public void toVehicle(RawTrafficDataHeader header, VehicleRec veh, StringBuilder result) throws Exception {
     result.append(EnumRecordType.V.getId());
     result.append(';');
-    result.append(header.getObservationDateFormat().format(veh.getTime()));
+    dates.appendObservationTime(veh.getTime(), result);
     result.append(',');
     result.append(veh.channelID);
     result.append(';');
@@ -229,31 +404,42 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
     for (ObservationField f: header.VV) {
       if (i > 0)
         result.append(',');
-      result.append(f.get(veh, header.F.FU));
+      if (f instanceof VehicleFieldsEnum)
+        ((VehicleFieldsEnum)f).append(veh, header.F.FU, result);
+      else
+        result.append(f.get(veh, header.F.FU));
       i++;
     }
     result.append(';');
     // axles
     if (header.VA.fields.size() > 0) {
-      for (VehicleRec.AxleRec axl: veh.axles) {
+      for (VehicleRec.AxleRec axl: veh.readAxles()) {
         i=0;
         for (; i<header.VA.numberOfFields(); i++) {
           if (i > 0)
             result.append(',');
-          result.append(header.VA.fields.get(i).get(axl, header.F.FU));
+          header.VA.fields.get(i).append(axl, header.F.FU, result);
         }
         result.append(';');
       }
     }
-    return result.toString();
   }
   
   protected String toTally(RawTrafficDataHeader header, VehicleTallyRec tally, Collection<TallyPartOrder> tallyPartsToSet) throws Exception {
     StringBuilder result = new StringBuilder();
+    toTally(header, tally, tallyPartsToSet, result);
+    return result.toString();
+  }
+  
+  /**
+   * 
+   * @param result Appended with the T record, without a line feed
+   */
+  protected void toTally(RawTrafficDataHeader header, VehicleTallyRec tally, Collection<TallyPartOrder> tallyPartsToSet, StringBuilder result) throws Exception {
     result.append(EnumRecordType.T.getId());
     result.append(';');
     // fixed referencing data subfields
-    result.append(header.getTallyDateFormat().format(tally.getTime()));
+    dates.appendTallyTime(tally.getTime(), result);
     result.append(',');
     result.append(tally.period);
     result.append(',');
@@ -264,21 +450,21 @@ public class RawTrafficDataFileTXTEncoder extends RawTrafficDataFileEncoder {
       p.encode(tally, header, result);
       result.append(';');
     }
-    
-    return result.toString();
   }
 
-  private String toMonitoringEvent(RawTrafficDataHeader header, MonitoringEventRec event) {
-    StringBuilder result = new StringBuilder();
+  /**
+   * 
+   * @param result Appended with the M record, without a line feed
+   */
+  protected void toMonitoringEvent(RawTrafficDataHeader header, MonitoringEventRec event, StringBuilder result) {
     result.append(EnumRecordType.M.getId());
     result.append(';');
-    result.append(header.getObservationDateFormat().format(event.getTime()));
+    dates.appendObservationTime(event.getTime(), result);
     result.append(';');
     result.append(event.getEventTypeID());
     result.append(';');
     result.append(RawFmtUtils.notNull(event.text));
     result.append(';');
-    return result.toString();
   }
 
 }
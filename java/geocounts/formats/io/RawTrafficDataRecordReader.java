@@ -0,0 +1,219 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import geocounts.traffic.formats.*;
+
+/**
+ * Reads a GEOCOUNTS file one body record at a time.
+ * The header is decoded when this object is constructed, then each call to {@link #next()} decodes the next tally, observation or monitoring event.
+ * Records are not kept, so files of any size can be read with little memory.
+ * Like {@link RawTrafficData}, tallies and observations on channels that are not in the header are skipped.
+ * <pre>
+ * RawTrafficDataRecordReader reader = new RawTrafficDataRecordReader(theInputFile);
+ * try {
+ *   while (reader.next()) {
+ *     if (reader.getRecordType() == EnumRecordType.V)
+ *       doSomething(reader.getObservation());
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ * After you have successfully constructed this object you <b>must</b> call {@link #close()}
+ * @see RawTrafficDataFileTXTDecoder
+ */
+public class RawTrafficDataRecordReader implements java.io.Closeable {
+
+  /**
+   * The decoded header. This is never null
+   */
+  public final RawTrafficDataHeader header = new RawTrafficDataHeader();
+
+  private final BufferedReader br;
+  private final RawTrafficDataFileTXTDecoder decoder;
+  private final RawTrafficDataRecordSummary summaryOfFile = new RawTrafficDataRecordSummary();
+  private final File sourceFile;
+
+  /**
+   * The first body line, read while decoding the header
+   */
+  private String pendingLine;
+
+  private EnumRecordType recordType;
+  private RawTrafficDataTrafficElement record;
+
+  /**
+   * @param rawFile The file to read
+   * @throws Exception If the header could not be decoded
+   */
+  public RawTrafficDataRecordReader(File rawFile) throws Exception {
+    this(new BufferedReader(new FileReader(rawFile)), new RawTrafficDataFileTXTDecoder(), rawFile);
+  }
+
+  /**
+   * @param in An InputStream. This is closed by {@link #close()}
+   * @throws Exception If the header could not be decoded
+   */
+  public RawTrafficDataRecordReader(InputStream in) throws Exception {
+    this(new BufferedReader(new InputStreamReader(in)), new RawTrafficDataFileTXTDecoder(), null);
+  }
+
+  /**
+   * @param br The reader. This is closed by {@link #close()}
+   * @param decoder The decoder to use for each record, with its {@link RawTrafficDataFileTXTDecoder#options options} set
+   * @throws Exception If the header could not be decoded
+   */
+  public RawTrafficDataRecordReader(BufferedReader br, RawTrafficDataFileTXTDecoder decoder) throws Exception {
+    this(br, decoder, null);
+  }
+
+  private RawTrafficDataRecordReader(BufferedReader br, RawTrafficDataFileTXTDecoder decoder, File sourceFile) throws Exception {
+    this.br = br;
+    this.decoder = decoder;
+    this.sourceFile = sourceFile;
+    try {
+      readHeader();
+    } catch (Exception ex) {
+      br.close();
+      throw ex;
+    }
+  }
+
+  private void readHeader() throws Exception {
+    String line = readLine();
+    while (line != null) {
+      EnumRecordType type = decoder.computeRecordType(line);
+      if (type.isBody) {
+        pendingLine = line;
+        return;
+      }
+      decode(line, type);
+      line = readLine();
+    }
+  }
+
+  private String readLine() throws IOException {
+    String line = br.readLine();
+    if (line != null)
+      summaryOfFile.linesRead++;
+    return line;
+  }
+
+  private RawTrafficDataTrafficElement decode(String line, EnumRecordType type) throws RawTrafficDataFileDecoderException {
+    try {
+      return decoder.decodeLine(line, type, header, summaryOfFile);
+    } catch (Exception ex) {
+      RawTrafficDataFileDecoderException de = (ex instanceof RawTrafficDataFileDecoderException) ? (RawTrafficDataFileDecoderException)ex : new RawTrafficDataFileDecoderException(summaryOfFile.linesRead, ex);
+      de.sourceFile = sourceFile;
+      throw de;
+    }
+  }
+
+  /**
+   * Decodes the next body record
+   * @return False if there are no more records
+   * @throws Exception If a record could not be decoded
+   */
+  public boolean next() throws Exception {
+    record = null;
+    recordType = null;
+    String line = pendingLine != null ? pendingLine : readLine();
+    pendingLine = null;
+    while (line != null) {
+      EnumRecordType type = decoder.computeRecordType(line);
+      RawTrafficDataTrafficElement rec = decode(line, type);
+      if ((rec != null) && accept(type, rec)) {
+        recordType = type;
+        record = rec;
+        return true;
+      }
+      line = readLine();
+    }
+    return false;
+  }
+
+  private boolean accept(EnumRecordType type, RawTrafficDataTrafficElement rec) {
+    switch (type) {
+    case T: return header.acceptTally((VehicleTallyRec)rec);
+    case V: return header.acceptObservation((VehicleRec)rec);
+    default: return true;
+    }
+  }
+
+  /**
+   *
+   * @return The type of the current record: {@link EnumRecordType#T T}, {@link EnumRecordType#V V} or {@link EnumRecordType#M M}. Null if {@link #next()} has not found a record
+   */
+  public EnumRecordType getRecordType() {
+    return recordType;
+  }
+
+  /**
+   *
+   * @return The current record
+   */
+  public RawTrafficDataTrafficElement getRecord() {
+    return record;
+  }
+
+  /**
+   *
+   * @return The current record if it is a {@link VehicleTallyRec tally}, otherwise null
+   */
+  public VehicleTallyRec getTally() {
+    return recordType == EnumRecordType.T ? (VehicleTallyRec)record : null;
+  }
+
+  /**
+   *
+   * @return The current record if it is a {@link VehicleRec observation}, otherwise null
+   */
+  public VehicleRec getObservation() {
+    return recordType == EnumRecordType.V ? (VehicleRec)record : null;
+  }
+
+  /**
+   *
+   * @return The current record if it is a {@link MonitoringEventRec monitoring event}, otherwise null
+   */
+  public MonitoringEventRec getMonitoringEvent() {
+    return recordType == EnumRecordType.M ? (MonitoringEventRec)record : null;
+  }
+
+  /**
+   *
+   * @return Counts of the records read so far
+   */
+  public RawTrafficDataRecordSummary getSummary() {
+    return summaryOfFile;
+  }
+
+  @Override
+  public void close() throws IOException {
+    br.close();
+  }
+}
@@ -26,6 +26,16 @@ public class RawTrafficDataRecordSummary {
   
   public int linesRead;
   
+  /**
+   * Bad values and skipped records, when {@link geocounts.traffic.formats.DecodingOptions#lenient lenient}
+   */
+  public int errors;
+  
+  /**
+   * Whether the {@link geocounts.traffic.formats.RawTrafficDataSink#onHeaderComplete() sink was told} the header is complete
+   */
+  boolean headerComplete;
+  
   /**
    * 
    * @return Count of vehicles, tallies and events
@@ -0,0 +1,199 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.formats.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import geocounts.traffic.formats.*;
+
+/**
+ * Writes a GEOCOUNTS file one body record at a time.
+ * The header is written once, before the first record, then each record is written as soon as it is appended.
+ * Records are not kept, so files of any size can be written with little memory.
+ * <pre>
+ * RawTrafficDataRecordWriter writer = new RawTrafficDataRecordWriter(theOutputFile, header);
+ * try {
+ *   while (collecting)
+ *     writer.appendObservation(nextVehicle());
+ * } finally {
+ *   writer.close();
+ * }
+ * </pre>
+ * This is also a {@link RawTrafficDataSink}, so a decoder can re-encode a file through it without loading the body:
+ * <pre>
+ * new RawTrafficDataFileTXTDecoder().load(theInputFile, true, new RawTrafficDataRecordWriter(theOutputFile, new RawTrafficDataHeader()));
+ * </pre>
+ * Records are written in the order they are appended.
+ * After you have successfully constructed this object you <b>must</b> call {@link #close()}
+ * @see RawTrafficDataRecordReader
+ * @see RawTrafficDataFileTXTEncoder
+ */
+public class RawTrafficDataRecordWriter extends RawTrafficDataFileTXTEncoder implements RawTrafficDataSink {
+
+  /**
+   * The header that is written before the first record
+   */
+  public final RawTrafficDataHeader header;
+
+  private final RawTrafficDataFilename fileName;
+  private boolean headerWritten;
+  private List<TallyPartOrder> tallyPartsToSet;
+
+  /**
+   * Writes in the platform's default character set through a {@link #DEFAULT_BUFFER_SIZE 1MB buffer}
+   * @param file
+   * @param header The header. Changes to it are written until the header is written
+   * @throws Exception
+   */
+  public RawTrafficDataRecordWriter(File file, RawTrafficDataHeader header) throws Exception {
+    this(new FileOutputStream(file).getChannel(), Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, true, new RawTrafficDataFilename(), header);
+  }
+
+  /**
+   * Writes in the platform's default character set through a {@link #DEFAULT_BUFFER_SIZE 1MB buffer}
+   * @param out This is closed by {@link #close()}
+   * @param header The header. Changes to it are written until the header is written
+   * @throws Exception
+   */
+  public RawTrafficDataRecordWriter(OutputStream out, RawTrafficDataHeader header) throws Exception {
+    this(Channels.newChannel(out), Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, true, new RawTrafficDataFilename(), header);
+  }
+
+  /**
+   * @param channel
+   * @param charset The character set of text that is not plain ASCII
+   * @param bufferSize The number of bytes collected before they are written to the channel
+   * @param shouldCloseChannel If true, {@link #close()} closes the channel
+   * @param fileName {@link RawTrafficDataFilename}
+   * @param header The header. Changes to it are written until the header is written
+   * @throws Exception
+   */
+  public RawTrafficDataRecordWriter(WritableByteChannel channel, Charset charset, int bufferSize, boolean shouldCloseChannel, RawTrafficDataFilename fileName, RawTrafficDataHeader header) throws Exception {
+    super(channel, charset, bufferSize, shouldCloseChannel);
+    this.fileName = fileName;
+    this.header = header;
+  }
+
+  /**
+   * Writes the header, if it has not already been written. This is called before the first record is written
+   * @throws Exception
+   */
+  public void writeHeader() throws Exception {
+    if (headerWritten)
+      return;
+    writeHeader(fileName, header);
+    headerWritten = true;
+
+    // get the tally parts being set. This is deduced from the header
+    tallyPartsToSet = new ArrayList<TallyPartOrder>();
+    tallyPartsToSet.addAll(header.T.TO.getAll());
+    if (tallyPartsToSet.size() == 0) {
+      TallyPartOrderDef.setDefaultPartOrder(header.T, tallyPartsToSet);
+    }
+  }
+
+  /**
+   * Writes a T record
+   * @param tally
+   * @throws Exception
+   */
+  public void appendTally(VehicleTallyRec tally) throws Exception {
+    writeHeader();
+    line.setLength(0);
+    toTally(header, tally, tallyPartsToSet, line);
+    println(line);
+  }
+
+  /**
+   * Writes a V record
+   * @param veh
+   * @throws Exception
+   */
+  public void appendObservation(VehicleRec veh) throws Exception {
+    writeHeader();
+    line.setLength(0);
+    toVehicle(header, veh, line);
+    println(line);
+  }
+
+  /**
+   * Writes an M record
+   * @param event
+   * @throws Exception
+   */
+  public void appendEvent(MonitoringEventRec event) throws Exception {
+    writeHeader();
+    line.setLength(0);
+    toMonitoringEvent(header, event, line);
+    println(line);
+  }
+
+  @Override
+  public RawTrafficDataHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void onHeaderComplete() throws Exception {
+    writeHeader();
+  }
+
+  /**
+   * Writes the tally if the header {@link RawTrafficDataHeader#acceptTally(VehicleTallyRec) accepts} it
+   */
+  @Override
+  public boolean addTally(VehicleTallyRec rec) throws Exception {
+    if (!header.acceptTally(rec))
+      return false;
+    appendTally(rec);
+    return true;
+  }
+
+  /**
+   * Writes the observation if the header {@link RawTrafficDataHeader#acceptObservation(VehicleRec) accepts} it
+   */
+  @Override
+  public boolean addObservation(VehicleRec obs) throws Exception {
+    if (!header.acceptObservation(obs))
+      return false;
+    appendObservation(obs);
+    return true;
+  }
+
+  @Override
+  public boolean addMonitoringEvent(MonitoringEventRec e) throws Exception {
+    appendEvent(e);
+    return true;
+  }
+
+  /**
+   * Writes the header if no records were appended
+   */
+  @Override
+  protected void onClose() throws Exception {
+    writeHeader();
+  }
+}
@@ -30,6 +30,38 @@
  * RawTrafficData rawdata = RawTrafficDataFileTXTDecoder.loadFromFile(theFile, true);
  * </pre>
  * 
+ * To decode one record at a time, without loading the body:<br />
+ * 
+ * <pre>
+ * RawTrafficDataRecordReader reader = new RawTrafficDataRecordReader(theInputFile);
+ * try {
+ *   while (reader.next()) {
+ *     VehicleRec veh = reader.getObservation();
+ *     ...
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ * 
+ * To decode straight into an aggregator, counter or filter, implement {@link geocounts.traffic.formats.RawTrafficDataSink}:<br />
+ * 
+ * <pre>
+ * new RawTrafficDataFileTXTDecoder().load(theInputFile, true, mySink);
+ * </pre>
+ * 
+ * To decode large files from memory mapped bytes, use {@link geocounts.formats.io.RawTrafficDataFileMappedDecoder}:<br />
+ * 
+ * <pre>
+ * new RawTrafficDataFileMappedDecoder().load(theInputFile, true, rawdata);
+ * </pre>
+ * 
+ * To decode the body on several threads, use {@link geocounts.formats.io.RawTrafficDataFileParallelDecoder}:<br />
+ * 
+ * <pre>
+ * RawTrafficData rawdata = RawTrafficDataFileParallelDecoder.loadFromFile(theInputFile, true);
+ * </pre>
+ * 
  * To encode:<br />
  * 
  * <pre>
@@ -42,5 +74,23 @@
  * RawTrafficDataFileTXTEncoder.writeData(theOutputFile, rawdata);
  * 
  * </pre>
+ * 
+ * To encode to a stream, through a large buffer that is only written when it is full:<br />
+ * 
+ * <pre>
+ * RawTrafficDataFileTXTEncoder.writeData(theOutputStream, new RawTrafficDataFilename(), rawdata);
+ * </pre>
+ * 
+ * To encode one record at a time, as records are produced:<br />
+ * 
+ * <pre>
+ * RawTrafficDataRecordWriter writer = new RawTrafficDataRecordWriter(theOutputFile, header);
+ * try {
+ *   writer.appendObservation(veh);
+ *   ...
+ * } finally {
+ *   writer.close();
+ * }
+ * </pre>
  */
 package geocounts.formats.io;
\ No newline at end of file
@@ -18,6 +18,7 @@
  */
 package geocounts.traffic.formats;
 
+import geocounts.formats.units.UnitConverter;
 import geocounts.traffic.formats.VehicleRec.AxleRec;
 
 /**
@@ -36,12 +37,30 @@ public enum AxleFieldsEnum implements IdDesc {
     public String get(AxleRec result, UnitsUsed units) throws Exception {
       if (result.aspaceMeters == 0)
         return "0";
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(result.aspaceMeters));
+      return RawFmtUtils.formatFixed(units.getLengthShort().toNative(result.aspaceMeters), 3);
     }
 
     @Override
-    public void set(String field, UnitsUsed units, AxleRec result) throws Exception {
-      result.aspaceMeters = units.getLengthShort().toMetric(Double.parseDouble(field));
+    public void append(AxleRec axle, UnitsUsed units, StringBuilder result) throws Exception {
+      if (axle.aspaceMeters == 0)
+        result.append('0');
+      else
+        RawFmtUtils.appendFixed(result, units.getLengthShort().toNative(axle.aspaceMeters), 3);
+    }
+
+    @Override
+    public UnitConverter getConverter(UnitsUsed units) {
+      return units.getLengthShort();
+    }
+
+    @Override
+    public void set(RawFmtTokenizer field, UnitsUsed units, AxleRec result) throws Exception {
+      setConverted(field, units, result);
+    }
+
+    @Override
+    public void setMetric(double metricValue, AxleRec result) {
+      result.aspaceMeters = metricValue;
     }
   },
   
@@ -53,12 +72,30 @@ public enum AxleFieldsEnum implements IdDesc {
     public String get(AxleRec result, UnitsUsed units) throws Exception {
       if (result.amassKg == 0)
         return "0";
-      return RawFmtUtils.df1.format(units.mass.toNative(result.amassKg));
+      return RawFmtUtils.formatFixed(units.mass.toNative(result.amassKg), 1);
     }
 
     @Override
-    public void set(String field, UnitsUsed units, AxleRec result) throws Exception {
-      result.amassKg = units.mass.toMetric(Double.parseDouble(field));
+    public void append(AxleRec axle, UnitsUsed units, StringBuilder result) throws Exception {
+      if (axle.amassKg == 0)
+        result.append('0');
+      else
+        RawFmtUtils.appendFixed(result, units.mass.toNative(axle.amassKg), 1);
+    }
+
+    @Override
+    public UnitConverter getConverter(UnitsUsed units) {
+      return units.mass;
+    }
+
+    @Override
+    public void set(RawFmtTokenizer field, UnitsUsed units, AxleRec result) throws Exception {
+      setConverted(field, units, result);
+    }
+
+    @Override
+    public void setMetric(double metricValue, AxleRec result) {
+      result.amassKg = metricValue;
     }
   },
   /**
@@ -72,8 +109,8 @@ public enum AxleFieldsEnum implements IdDesc {
     }
 
     @Override
-    public void set(String field, UnitsUsed units, AxleRec result) throws Exception {
-      result.alrb = Integer.parseInt(field);
+    public void set(RawFmtTokenizer field, UnitsUsed units, AxleRec result) throws Exception {
+      result.alrb = field.parseInt();
     }
   },
   
@@ -85,7 +122,7 @@ public enum AxleFieldsEnum implements IdDesc {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, AxleRec result) throws Exception {
+    public void set(RawFmtTokenizer value, UnitsUsed units, AxleRec result) throws Exception {
     }
   };
   
@@ -107,5 +144,47 @@ public enum AxleFieldsEnum implements IdDesc {
   }
   
   public abstract String get(AxleRec result, UnitsUsed units) throws Exception;
-  public abstract void set(String field, UnitsUsed units, AxleRec result) throws Exception;
+  
+  /**
+   * Appends the value as {@link #get(AxleRec, UnitsUsed)} would. Fields in FU units do not create a String
+   */
+  public void append(AxleRec axle, UnitsUsed units, StringBuilder result) throws Exception {
+    result.append(get(axle, units));
+  }
+  
+  public abstract void set(RawFmtTokenizer field, UnitsUsed units, AxleRec result) throws Exception;
+
+  /**
+   * Used by fields with a {@link #getConverter(UnitsUsed) converter}: the value is parsed in native units and set in metric units
+   */
+  protected final void setConverted(RawFmtTokenizer field, UnitsUsed units, AxleRec result) throws Exception {
+    setMetric(getConverter(units).toMetric(field.parseDouble()), result);
+  }
+
+  /**
+   * 
+   * @param units
+   * @return The converter for the units in the FU header, or null if this field does not use FU units
+   */
+  public UnitConverter getConverter(UnitsUsed units) {
+    return null;
+  }
+
+  /**
+   * Sets a value that is already in metric units. Integer fields drop any fraction
+   * @param metricValue
+   * @param result
+   * @throws Exception If the field cannot hold the value
+   */
+  public void setMetric(double metricValue, AxleRec result) throws Exception {
+    switch (this) {
+    case alrb: result.alrb = (int)metricValue; break;
+    case unknown: break;
+    default: RawFmtUtils.throwException(this, "No metric value", name());
+    }
+  }
+  
+  public void set(String field, UnitsUsed units, AxleRec result) throws Exception {
+    set(RawFmtTokenizer.of(field), units, result);
+  }
 }
@@ -82,11 +82,32 @@ public final class ClassifiedLengthDef extends ClassifiedDef {
     return getBin(veh.lengthMeters);
   }
   
+  /**
+   * The bin ends are in increasing order, so this is a binary search
+   * @param lengthMeters
+   * @return The first bin that ends after the length
+   */
   public int getBin(double lengthMeters) {
-    for (int i=0; i<endBinsMeters.length; i++)
-      if (lengthMeters < endBinsMeters[i])
-        return i;
-    return endBinsMeters.length;
+    return getBin(endBinsMeters, lengthMeters);
+  }
+  
+  /**
+   * 
+   * @param endBinsMeters The bin ends, in increasing order
+   * @param lengthMeters
+   * @return The first bin that ends after the length
+   */
+  static int getBin(double[] endBinsMeters, double lengthMeters) {
+    int lo = 0;
+    int hi = endBinsMeters.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (lengthMeters < endBinsMeters[mid])
+        hi = mid;
+      else
+        lo = mid + 1;
+    }
+    return lo;
   }
   
   public double getBinLower(int bin) {
@@ -107,7 +128,7 @@ public final class ClassifiedLengthDef extends ClassifiedDef {
     String[] result = new String[1 + endBinsMeters.length];
     result[0] = RawFmtUtils.notNull(getName());
     for (int i=0; i<endBinsMeters.length; i++)
-      result[i+1] = RawFmtUtils.df3.format(lengthUnits().toNative(endBinsMeters[i]));
+      result[i+1] = RawFmtUtils.formatFixed(lengthUnits().toNative(endBinsMeters[i]), 3);
     return result;
   }
 
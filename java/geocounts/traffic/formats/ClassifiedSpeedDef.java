@@ -68,11 +68,9 @@ public final class ClassifiedSpeedDef extends ClassifiedDef {
   
   @Override
   public double getTally(VehicleTallyRec tally, int bin) {
-    try {
-      return tally.countsSpeed[bin];
-    } catch (java.lang.ArrayIndexOutOfBoundsException aiobe) {
+    if ((bin < 0) || (bin >= tally.countsSpeed.length))
       return 0;
-    }
+    return tally.countsSpeed[bin];
   }
 
   @Override
@@ -100,6 +98,18 @@ public final class ClassifiedSpeedDef extends ClassifiedDef {
   }
   
   public int getBin(double kph) {
+    return getBin(firstBinStepKph, otherBinStepKph, numberOfBins, kph);
+  }
+  
+  /**
+   * 
+   * @param firstBinStepKph
+   * @param otherBinStepKph
+   * @param numberOfBins
+   * @param kph
+   * @return The bin of the speed. Speeds above the last bin are in the last bin, and all speeds are in bin 0 if the other bins have no step
+   */
+  static int getBin(double firstBinStepKph, double otherBinStepKph, int numberOfBins, double kph) {
     if (otherBinStepKph <= 0)
       return 0;
     if (kph < firstBinStepKph)
@@ -143,8 +153,8 @@ public final class ClassifiedSpeedDef extends ClassifiedDef {
       return null;
     return new String[]{RawFmtUtils.notNull(getName()), 
                         Integer.toString(numberOfBins), 
-                        RawFmtUtils.df3.format(speedUnits().toNative(otherBinStepKph)), 
-                        RawFmtUtils.df3.format(speedUnits().toNative(firstBinStepKph))};
+                        RawFmtUtils.formatFixed(speedUnits().toNative(otherBinStepKph), 3), 
+                        RawFmtUtils.formatFixed(speedUnits().toNative(firstBinStepKph), 3)};
   }
   
   @Override
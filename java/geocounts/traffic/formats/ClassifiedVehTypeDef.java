@@ -75,7 +75,7 @@ public final class ClassifiedVehTypeDef extends ClassifiedDef {
   
   @Override
   public int getBin(VehicleRec rec) {
-    return rec.otherClassifications.vclassType[0];
+    return rec.getVehType();
   }
 
   @Override
@@ -32,10 +32,25 @@ public class DecodingOptions {
 
   public boolean assertTLBins;
   
+  /**
+   * If true, bad values and body records that cannot be decoded are counted as errors instead of thrown.
+   * A value that is not a number is set to 0, and a record that cannot be decoded is skipped.
+   * @see geocounts.formats.io.RawTrafficDataRecordSummary#errors
+   */
+  public boolean lenient;
+  
   public void setUseStrict() {
     assertTFValues = true;
     assertTCBins = true;
     assertTSBins = true;
     assertTLBins = true;
   }
+  
+  public void copyFrom(DecodingOptions other) {
+    assertTFValues = other.assertTFValues;
+    assertTCBins = other.assertTCBins;
+    assertTSBins = other.assertTSBins;
+    assertTLBins = other.assertTLBins;
+    lenient = other.lenient;
+  }
 }
@@ -20,6 +20,7 @@ package geocounts.traffic.formats;
 
 import java.text.ParseException;
 import java.util.Date;
+import java.util.HashMap;
 
 /**
  * There are four categories of {@link EnumRecordType#H header record}. Each category starts with a different letter<ul>
@@ -99,12 +100,12 @@ public enum EnumHeaderRecords implements IdDesc {
   FD("File date produced") {
     @Override
     public String[] getValues(RawTrafficDataHeader header) {
-      return header.F.FD != 0 ? new String[]{header.getObservationDateFormat().format(header.F.FD)} : null;
+      return header.F.FD != 0 ? new String[]{RawFmtUtils.sdfHeaderVOfThread().format(header.F.FD)} : null;
     }
     
     @Override
     public Object setValues(RawTrafficDataHeader header, String value) throws ParseException {
-      header.F.FD = header.getObservationDateFormat().parse(value).getTime();
+      header.F.FD = RawFmtUtils.sdfHeaderVOfThread().parse(value).getTime();
       return header.F.FD;
     }
   },
@@ -632,8 +633,8 @@ public enum EnumHeaderRecords implements IdDesc {
       if (!header.S.SR.isSet())
         return null;
       String[] result = new String[4];
-      String from = header.getObservationDateFormat().format(header.S.SR.getStartTime());
-      String to   = header.getObservationDateFormat().format(header.S.SR.getEndTime());
+      String from = RawFmtUtils.sdfHeaderVOfThread().format(header.S.SR.getStartTime());
+      String to   = RawFmtUtils.sdfHeaderVOfThread().format(header.S.SR.getEndTime());
       result[0] = from.substring(0, 10);
       result[1] = from.substring(11);
       result[2] = to.substring(0, 10);
@@ -645,8 +646,8 @@ public enum EnumHeaderRecords implements IdDesc {
     @Override
     public Object setValues(RawTrafficDataHeader header, String value) throws ParseException {
       String[] fields = RawFmtUtils.split(value, ',');
-      Date start = header.getObservationDateFormat().parse(fields[0] + "," + fields[1]);
-      Date end   = header.getObservationDateFormat().parse(fields[2] + "," + fields[3]);
+      Date start = RawFmtUtils.sdfHeaderVOfThread().parse(fields[0] + "," + fields[1]);
+      Date end   = RawFmtUtils.sdfHeaderVOfThread().parse(fields[2] + "," + fields[3]);
       header.S.SR.set(start.getTime(), end.getTime());
       return header.S.SR;
     }
@@ -1082,13 +1083,17 @@ public enum EnumHeaderRecords implements IdDesc {
     return false;
   }
   
+  private static final HashMap<String, EnumHeaderRecords> byKey = new HashMap<String, EnumHeaderRecords>();
+  static {
+    for (EnumHeaderRecords rec: values())
+      byKey.put(rec.name(), rec);
+  }
+  
   public static EnumHeaderRecords fromKey(String key) throws Exception {
-    try {
-      return EnumHeaderRecords.valueOf(key);
-    } catch (Exception ex) {
+    EnumHeaderRecords result = byKey.get(key);
+    if (result == null)
       RawFmtUtils.throwException("EnumHeaderRecords", "Key not found", key);
-      return null;
-    }
+    return result;
   }
 
 }
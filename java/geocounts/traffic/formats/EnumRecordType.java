@@ -68,5 +68,21 @@ public enum EnumRecordType implements IdDesc {
   public String getDescription() {
     return desc;
   }
+  
+  /**
+   * 
+   * @param name The first character of a line
+   * @return The record type with the name, or null if there is none
+   */
+  public static EnumRecordType fromName(char name) {
+    switch (name) {
+    case 'X': return X;
+    case 'H': return H;
+    case 'T': return T;
+    case 'V': return V;
+    case 'M': return M;
+    default: return null;
+    }
+  }
 
 }
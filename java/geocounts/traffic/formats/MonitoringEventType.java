@@ -18,6 +18,8 @@
  */
 package geocounts.traffic.formats;
 
+import java.util.HashMap;
+
 /**
  * The type of {@link MonitoringEventRec monitoring event}
  *
@@ -94,4 +96,19 @@ public enum MonitoringEventType implements IdDesc {
   public String getDescription() {
     return desc;
   }
+  
+  private static final HashMap<String, MonitoringEventType> byId = new HashMap<String, MonitoringEventType>();
+  static {
+    for (MonitoringEventType type: values())
+      byId.put(type.getId(), type);
+  }
+  
+  /**
+   * 
+   * @param id
+   * @return The event type, or null if there is no type with the id
+   */
+  public static MonitoringEventType fromId(String id) {
+    return byId.get(id);
+  }
 }
@@ -0,0 +1,903 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import geocounts.formats.units.UnitConverter;
+import geocounts.traffic.formats.VehicleRec.AxleRec;
+
+/**
+ * Keeps observations in columns: one primitive array for each field in {@link VehicleRecordDef VV}, plus the time and channel of each observation.
+ * Fields that are not in VV are not kept, so an observation takes a few bytes for each field the file has, instead of a whole {@link VehicleRec}.
+ * Axles are kept the same way, for the fields in {@link AxleRecordDef VA}.
+ * <br />
+ * This is a {@link RawTrafficDataSink}, so any decoder can load into it. Tallies and monitoring events are passed to {@link #data}.
+ * A decoder can also decode the fields of each observation straight into the columns, see {@link #beginObservation(int, long)}:
+ * <pre>
+ * ObservationColumns columns = new ObservationColumns();
+ * new RawTrafficDataFileTXTDecoder().load(theInputFile, true, columns);
+ * ObservationColumns.Cursor c = columns.cursor();
+ * while (c.next())
+ *   total += c.getSpeedKph();
+ * </pre>
+ * The columns are laid out from the header when the first observation is added. The header should not change after that.
+ * @see VehicleRec
+ * @see RawTrafficData
+ */
+public class ObservationColumns implements RawTrafficDataSink {
+
+  /**
+   * The header, tallies and monitoring events. Observations are kept in this object, not in data
+   */
+  public final RawTrafficData data;
+
+  private int size;
+  private int capacity;
+  private long[] times = new long[0];
+  private int[] channels = new int[0];
+
+  /**
+   * Null until the first observation is added
+   */
+  private Column[] columns;
+  /**
+   * The column of each {@link VehicleFieldsEnum}, by ordinal. Null if the field is not kept
+   */
+  private final Column[] byField = new Column[VehicleFieldsEnum.values().length];
+
+  /**
+   * The index of the first axle of each observation, and the number of axles after the last observation. Null if axles are not kept
+   */
+  private int[] axleStart;
+  private int axleCount;
+  private int axleCapacity;
+  private AxleColumn[] axleColumns;
+  /**
+   * The column of each field in {@link AxleRecordDef VA}, by index. Null if the field is not kept
+   */
+  private AxleColumn[] axleColumnByIndex;
+  private UnitsUsed units;
+
+  public ObservationColumns() {
+    this(new RawTrafficData());
+  }
+
+  /**
+   * @param data Receives the header, tallies and monitoring events
+   */
+  public ObservationColumns(RawTrafficData data) {
+    this.data = data;
+  }
+
+  @Override
+  public RawTrafficDataHeader getHeader() {
+    return data.header;
+  }
+
+  @Override
+  public void onHeaderComplete() throws Exception {
+    data.onHeaderComplete();
+  }
+
+  @Override
+  public boolean addTally(VehicleTallyRec rec) throws Exception {
+    return data.addTally(rec);
+  }
+
+  @Override
+  public boolean addMonitoringEvent(MonitoringEventRec e) throws Exception {
+    return data.addMonitoringEvent(e);
+  }
+
+  /**
+   * Stores the observation if the header {@link RawTrafficDataHeader#acceptObservation(VehicleRec) accepts} it
+   */
+  @Override
+  public boolean addObservation(VehicleRec obs) throws Exception {
+    if (!data.header.acceptObservation(obs))
+      return false;
+    add(obs);
+    return true;
+  }
+
+  /**
+   * Copies the fields of an observation into the columns. The observation is not kept
+   * @param veh
+   * @throws Exception
+   */
+  public void add(VehicleRec veh) throws Exception {
+    if (columns == null)
+      layout();
+    if (size == capacity)
+      grow(Math.max(16, capacity + (capacity >> 1)));
+    times[size] = veh.getTime();
+    channels[size] = veh.channelID;
+    for (Column c: columns)
+      c.store(veh, size);
+    if (axleStart != null) {
+      axleStart[size] = axleCount;
+      for (AxleRec axle: veh.readAxles()) {
+        if (axleCount == axleCapacity)
+          growAxles(Math.max(16, axleCapacity + (axleCapacity >> 1)));
+        for (AxleColumn c: axleColumns)
+          c.store(axle, axleCount);
+        axleCount++;
+      }
+      axleStart[size + 1] = axleCount;
+    }
+    size++;
+  }
+
+  /**
+   * Starts an observation that is decoded straight into the columns, without a {@link VehicleRec}.
+   * Fields that are not set are 0, or null for text, as in a new {@link VehicleRec}.
+   * Call {@link #endObservation()} to keep it, or {@link #cancelObservation()} to drop it
+   * @param channelID
+   * @param timeUTCNotAccountedFor The time in the record, as for {@link VehicleRecordDef#create(int, long)}
+   */
+  public void beginObservation(int channelID, long timeUTCNotAccountedFor) {
+    if (columns == null)
+      layout();
+    if (size == capacity)
+      grow(Math.max(16, capacity + (capacity >> 1)));
+    times[size] = data.header.VV.getObservationTime(timeUTCNotAccountedFor);
+    channels[size] = channelID;
+    for (Column c: columns)
+      c.clear(size);
+    if (axleStart != null)
+      axleStart[size] = axleCount;
+  }
+
+  /**
+   * Sets a field of the observation begun by {@link #beginObservation(int, long)}
+   * @param index The index of the field in {@link VehicleRecordDef VV}
+   * @param value A tokenizer positioned on the value
+   * @param converter The converter of the field's FU units, or null if the value is not in FU units
+   * @throws Exception
+   */
+  public void setField(int index, RawFmtTokenizer value, UnitConverter converter) throws Exception {
+    columns[index].parse(value, converter, units, size);
+  }
+
+  /**
+   * Adds an axle to the observation begun by {@link #beginObservation(int, long)}
+   */
+  public void beginAxle() {
+    if (axleStart == null)
+      return;
+    if (axleCount == axleCapacity)
+      growAxles(Math.max(16, axleCapacity + (axleCapacity >> 1)));
+    for (AxleColumn c: axleColumns)
+      c.values[axleCount] = 0;
+    axleCount++;
+  }
+
+  /**
+   * Sets a field of the axle added by {@link #beginAxle()}
+   * @param index The index of the field in {@link AxleRecordDef VA}
+   * @param value A tokenizer positioned on the value
+   * @param converter The converter of the field's FU units, or null if the value is not in FU units
+   * @throws Exception
+   */
+  public void setAxleField(int index, RawFmtTokenizer value, UnitConverter converter) throws Exception {
+    AxleColumn c = (axleColumnByIndex != null) ? axleColumnByIndex[index] : null;
+    if (c != null)
+      c.parse(value, converter, axleCount - 1);
+  }
+
+  /**
+   * Keeps the observation begun by {@link #beginObservation(int, long)} if the header
+   * {@link RawTrafficDataHeader#acceptObservation(VehicleRec) accepts} it
+   * @return True if the observation is kept
+   */
+  public boolean endObservation() {
+    Column speed = byField[VehicleFieldsEnum.speed.ordinal()];
+    double speedKph = (speed != null) ? speed.doubleAt(size) : 0;
+    int computedChannel = data.header.computeObservationChannel(channels[size], speedKph);
+    if (computedChannel < 0) {
+      cancelObservation();
+      return false;
+    }
+    if (computedChannel != channels[size]) {
+      channels[size] = computedChannel;
+      if (speed != null)
+        ((DoubleColumn)speed).values[size] = -speedKph;
+    }
+    if (axleStart != null)
+      axleStart[size + 1] = axleCount;
+    size++;
+    return true;
+  }
+
+  /**
+   * Drops the observation begun by {@link #beginObservation(int, long)}
+   */
+  public void cancelObservation() {
+    if (axleStart != null)
+      axleCount = axleStart[size];
+  }
+
+  /**
+   * @return The number of observations
+   */
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+    axleCount = 0;
+  }
+
+  /**
+   * Shrinks the columns to the number of observations
+   */
+  public void trimToSize() {
+    if (capacity > size)
+      grow(size);
+    if (axleCapacity > axleCount)
+      growAxles(axleCount);
+  }
+
+  /**
+   * @param row
+   * @return The time of an observation
+   */
+  public long getTime(int row) {
+    checkRow(row);
+    return times[row];
+  }
+
+  /**
+   * @param row
+   * @return The channel of an observation
+   */
+  public int getChannelID(int row) {
+    checkRow(row);
+    return channels[row];
+  }
+
+  /**
+   * @param field
+   * @return True if the field is kept in a column
+   */
+  public boolean hasField(ObservationField field) {
+    return findColumn(field) != null;
+  }
+
+  /**
+   * @return A new cursor, positioned before the first observation
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * @param row
+   * @return A new {@link VehicleRec} with the kept fields of an observation
+   * @throws Exception
+   */
+  public VehicleRec get(int row) throws Exception {
+    return copyTo(row, null);
+  }
+
+  /**
+   * Sets a {@link VehicleRec} from the kept fields of an observation, so one object can be reused to read many observations.
+   * Fields that are not kept are not changed. Axles and {@link VehicleRec#getUserDefined() user defined fields} are replaced
+   * @param row
+   * @param result The observation to set, or null for a new one
+   * @return result, or a new {@link VehicleRec}
+   * @throws Exception
+   */
+  public VehicleRec copyTo(int row, VehicleRec result) throws Exception {
+    checkRow(row);
+    if (result == null) {
+      result = VehicleRec.createNoTZ(channels[row], times[row]);
+      result.schema = data.header.VV;
+    } else {
+      result.time = times[row];
+      result.channelID = channels[row];
+      result.clearUserDefined();
+      result.clearAxles();
+    }
+    for (Column c: columns)
+      c.load(row, result);
+    if (axleStart != null) {
+      for (int a=axleStart[row]; a<axleStart[row + 1]; a++) {
+        AxleRec axle = result.addAxle();
+        for (AxleColumn c: axleColumns)
+          c.load(a, axle);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds every observation to a sink, in order. Each is a new {@link VehicleRec}
+   * @param result
+   * @throws Exception
+   */
+  public void addTo(RawTrafficDataSink result) throws Exception {
+    for (int row=0; row<size; row++)
+      result.addObservation(get(row));
+  }
+
+  private void checkRow(int row) {
+    if ((row < 0) || (row >= size))
+      throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+  }
+
+  private Column findColumn(ObservationField field) {
+    if (field instanceof VehicleFieldsEnum)
+      return byField[((VehicleFieldsEnum)field).ordinal()];
+    if (columns != null) {
+      for (Column c: columns)
+        if (c.field.equals(field))
+          return c;
+    }
+    return null;
+  }
+
+  /**
+   * Creates a column for each field in the header
+   */
+  private void layout() {
+    RawTrafficDataHeader header = data.header;
+    units = header.F.FU;
+    List<Column> result = new ArrayList<Column>();
+    for (ObservationField f: header.VV) {
+      Column c;
+      if (f instanceof VehicleFieldsEnum) {
+        VehicleFieldsEnum v = (VehicleFieldsEnum)f;
+        switch (v) {
+        case speed: case wbase: case length: case overhang: case chassisheight: case width: case height:
+        case mass: case masstare: case masslegal: case center: case lat: case lng:
+          c = new DoubleColumn(v);
+          break;
+        case vehicleid: case chassiscode: case mac:
+          c = new LongColumn(v);
+          break;
+        case color: case idtag: case bayid: case img: case imgfile:
+          c = new StringColumn(v, header.F.FU);
+          break;
+        default:
+          c = new IntColumn(v);
+        }
+        byField[v.ordinal()] = c;
+      } else
+        c = new StringColumn(f, header.F.FU);
+      result.add(c);
+    }
+    columns = result.toArray(new Column[result.size()]);
+    for (Column c: columns)
+      c.grow(capacity);
+
+    if (header.VA.isRecording()) {
+      List<AxleColumn> axles = new ArrayList<AxleColumn>();
+      axleColumnByIndex = new AxleColumn[header.VA.numberOfFields()];
+      for (int i=0; i<axleColumnByIndex.length; i++) {
+        AxleFieldsEnum f = header.VA.fields.get(i);
+        if (f != AxleFieldsEnum.unknown) {
+          axleColumnByIndex[i] = new AxleColumn(f);
+          axles.add(axleColumnByIndex[i]);
+        }
+      }
+      axleColumns = axles.toArray(new AxleColumn[axles.size()]);
+      axleStart = new int[capacity + 1];
+    }
+  }
+
+  private void grow(int newCapacity) {
+    times = Arrays.copyOf(times, newCapacity);
+    channels = Arrays.copyOf(channels, newCapacity);
+    for (Column c: columns)
+      c.grow(newCapacity);
+    if (axleStart != null)
+      axleStart = Arrays.copyOf(axleStart, newCapacity + 1);
+    capacity = newCapacity;
+  }
+
+  private void growAxles(int newCapacity) {
+    for (AxleColumn c: axleColumns)
+      c.grow(newCapacity);
+    axleCapacity = newCapacity;
+  }
+
+  /**
+   * Reads the observations like a {@link VehicleRec}, without creating one.
+   * Fields that are not kept are 0, or null for text
+   */
+  public class Cursor {
+    private int row = -1;
+
+    /**
+     * Moves to the next observation
+     * @return False if there are no more observations
+     */
+    public boolean next() {
+      if (row + 1 >= size)
+        return false;
+      row++;
+      return true;
+    }
+
+    /**
+     * @param row The observation to move to
+     */
+    public void moveTo(int row) {
+      checkRow(row);
+      this.row = row;
+    }
+
+    public int getRow() {
+      return row;
+    }
+
+    public long getTime() {
+      return times[row];
+    }
+
+    public int getChannelID() {
+      return channels[row];
+    }
+
+    /**
+     * @see VehicleRec#id
+     */
+    public long getId() {
+      return getLong(VehicleFieldsEnum.vehicleid);
+    }
+
+    /**
+     * @return An always positive speed value
+     * @see VehicleRec#getSpeedKph()
+     */
+    public double getSpeedKph() {
+      return Math.abs(getDouble(VehicleFieldsEnum.speed));
+    }
+
+    /**
+     * @see VehicleRec#lengthMeters
+     */
+    public double getLengthMeters() {
+      return getDouble(VehicleFieldsEnum.length);
+    }
+
+    /**
+     * @see VehicleRec#massKg
+     */
+    public double getMassKg() {
+      return getDouble(VehicleFieldsEnum.mass);
+    }
+
+    /**
+     * @return The primary type classification
+     * @see WKObservationClassifications#vclassType
+     */
+    public int getVehType() {
+      return (int)getLong(VehicleFieldsEnum.vclass);
+    }
+
+    /**
+     * @param field
+     * @return The value of a numeric field, in metric units
+     */
+    public double getDouble(VehicleFieldsEnum field) {
+      Column c = byField[field.ordinal()];
+      return c != null ? c.doubleAt(row) : 0;
+    }
+
+    /**
+     * @param field
+     * @return The value of an integer field
+     */
+    public long getLong(VehicleFieldsEnum field) {
+      Column c = byField[field.ordinal()];
+      return c != null ? c.longAt(row) : 0;
+    }
+
+    /**
+     * @param field A text field, or a {@link UserDefinedObservationField}
+     * @return The text of the field
+     */
+    public String getString(ObservationField field) {
+      Column c = findColumn(field);
+      return c != null ? c.stringAt(row) : null;
+    }
+
+    /**
+     * @return The number of axles kept for this observation
+     */
+    public int getNumberOfAxles() {
+      return axleStart != null ? axleStart[row + 1] - axleStart[row] : 0;
+    }
+
+    /**
+     * @param axle The axle of this observation, from 0
+     * @param field
+     * @return The value of the field, in metric units
+     */
+    public double getAxle(int axle, AxleFieldsEnum field) {
+      if ((axle < 0) || (axle >= getNumberOfAxles()))
+        throw new IndexOutOfBoundsException("Axle " + axle + " of " + getNumberOfAxles());
+      for (AxleColumn c: axleColumns)
+        if (c.field == field)
+          return c.values[axleStart[row] + axle];
+      return 0;
+    }
+
+    /**
+     * @return A new {@link VehicleRec} of this observation
+     * @throws Exception
+     */
+    public VehicleRec toVehicle() throws Exception {
+      return get(row);
+    }
+  }
+
+  private static abstract class Column {
+    final ObservationField field;
+
+    Column(ObservationField field) {
+      this.field = field;
+    }
+
+    abstract void grow(int capacity);
+    abstract void store(VehicleRec veh, int row) throws Exception;
+    abstract void load(int row, VehicleRec result) throws Exception;
+    /**
+     * Sets the value as {@link ObservationField#set(RawFmtTokenizer, UnitsUsed, VehicleRec)} would
+     */
+    abstract void parse(RawFmtTokenizer value, UnitConverter converter, UnitsUsed units, int row) throws Exception;
+    /**
+     * Sets the value of a new {@link VehicleRec}
+     */
+    abstract void clear(int row);
+
+    double doubleAt(int row) {
+      return longAt(row);
+    }
+
+    long longAt(int row) {
+      return 0;
+    }
+
+    String stringAt(int row) {
+      return null;
+    }
+  }
+
+  private static class DoubleColumn extends Column {
+    private final VehicleFieldsEnum f;
+    private double[] values = new double[0];
+
+    DoubleColumn(VehicleFieldsEnum f) {
+      super(f);
+      this.f = f;
+    }
+
+    @Override
+    void grow(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    double doubleAt(int row) {
+      return values[row];
+    }
+
+    @Override
+    void parse(RawFmtTokenizer value, UnitConverter converter, UnitsUsed units, int row) throws Exception {
+      values[row] = (converter != null) ? converter.toMetric(value.parseDouble()) : value.parseDouble();
+    }
+
+    @Override
+    void clear(int row) {
+      values[row] = 0;
+    }
+
+    @Override
+    long longAt(int row) {
+      return (long)values[row];
+    }
+
+    @Override
+    void store(VehicleRec veh, int row) {
+      double v;
+      switch (f) {
+      case speed: v = veh.speedKph; break;
+      case wbase: v = veh.wheelbaseMeters; break;
+      case length: v = veh.lengthMeters; break;
+      case overhang: v = veh.overhangMeters; break;
+      case chassisheight: v = veh.chassisheightMeters; break;
+      case width: v = veh.widthMeters; break;
+      case height: v = veh.heightMeters; break;
+      case mass: v = veh.massKg; break;
+      case masstare: v = veh.massTareKg; break;
+      case masslegal: v = veh.massLegalKg; break;
+      case center: v = veh.centerMeters; break;
+      case lat: v = veh.latitude; break;
+      case lng: v = veh.longitude; break;
+      default: throw new IllegalStateException(f.name());
+      }
+      values[row] = v;
+    }
+
+    @Override
+    void load(int row, VehicleRec result) {
+      double v = values[row];
+      switch (f) {
+      case speed: result.speedKph = v; break;
+      case wbase: result.wheelbaseMeters = v; break;
+      case length: result.lengthMeters = v; break;
+      case overhang: result.overhangMeters = v; break;
+      case chassisheight: result.chassisheightMeters = v; break;
+      case width: result.widthMeters = v; break;
+      case height: result.heightMeters = v; break;
+      case mass: result.massKg = v; break;
+      case masstare: result.massTareKg = v; break;
+      case masslegal: result.massLegalKg = v; break;
+      case center: result.centerMeters = v; break;
+      case lat: result.latitude = v; break;
+      case lng: result.longitude = v; break;
+      default: throw new IllegalStateException(f.name());
+      }
+    }
+  }
+
+  private static class LongColumn extends Column {
+    private final VehicleFieldsEnum f;
+    private long[] values = new long[0];
+
+    LongColumn(VehicleFieldsEnum f) {
+      super(f);
+      this.f = f;
+    }
+
+    @Override
+    void grow(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    long longAt(int row) {
+      return values[row];
+    }
+
+    @Override
+    void store(VehicleRec veh, int row) {
+      long v;
+      switch (f) {
+      case vehicleid: v = veh.id; break;
+      case chassiscode: v = veh.chassisCode; break;
+      case mac: v = veh.mac; break;
+      default: throw new IllegalStateException(f.name());
+      }
+      values[row] = v;
+    }
+
+    @Override
+    void load(int row, VehicleRec result) {
+      long v = values[row];
+      switch (f) {
+      case vehicleid: result.id = v; break;
+      case chassiscode: result.chassisCode = v; break;
+      case mac: result.mac = v; break;
+      default: throw new IllegalStateException(f.name());
+      }
+    }
+
+    @Override
+    void parse(RawFmtTokenizer value, UnitConverter converter, UnitsUsed units, int row) throws Exception {
+      values[row] = (f == VehicleFieldsEnum.mac) ? units.mac.parse(value.toString()) : value.parseLong();
+    }
+
+    @Override
+    void clear(int row) {
+      values[row] = 0;
+    }
+  }
+
+  private static class IntColumn extends Column {
+    private final VehicleFieldsEnum f;
+    private int[] values = new int[0];
+
+    IntColumn(VehicleFieldsEnum f) {
+      super(f);
+      this.f = f;
+    }
+
+    @Override
+    void grow(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    long longAt(int row) {
+      return values[row];
+    }
+
+    @Override
+    void store(VehicleRec veh, int row) {
+      int v;
+      switch (f) {
+      case naxles: v = veh.naxles; break;
+      case delay: v = veh.delaySec; break;
+      case tsig: v = veh.tsig != null ? veh.tsig.ordinal() : 0; break;
+      case vclass: v = veh.readClassifications().vclassType[0]; break;
+      case vclass1: v = veh.readClassifications().vclassType[1]; break;
+      case vclass2: v = veh.readClassifications().vclassType[2]; break;
+      case vclassl: v = veh.readClassifications().vclassLength; break;
+      case qc: v = veh.readClassifications().qc; break;
+      case tempair: v = veh.getTemperature().airC; break;
+      case age: v = veh.age; break;
+      case rssi: v = veh.rssi; break;
+      case bttype: v = veh.bttype; break;
+      default: throw new IllegalStateException(f.name());
+      }
+      values[row] = v;
+    }
+
+    @Override
+    void load(int row, VehicleRec result) {
+      int v = values[row];
+      switch (f) {
+      case naxles: result.naxles = v; break;
+      case delay: result.delaySec = v; break;
+      case tsig: result.tsig = SignalPhase.values()[v]; break;
+      case vclass: result.getOtherClassifications().vclassType[0] = v; break;
+      case vclass1: result.getOtherClassifications().vclassType[1] = v; break;
+      case vclass2: result.getOtherClassifications().vclassType[2] = v; break;
+      case vclassl: result.getOtherClassifications().vclassLength = v; break;
+      case qc: result.getOtherClassifications().qc = v; break;
+      case tempair: result.getTemperature().airC = v; break;
+      case age: result.age = v; break;
+      case rssi: result.rssi = v; break;
+      case bttype: result.bttype = v; break;
+      default: throw new IllegalStateException(f.name());
+      }
+    }
+
+    @Override
+    void parse(RawFmtTokenizer value, UnitConverter converter, UnitsUsed units, int row) throws Exception {
+      int v;
+      switch (f) {
+      case delay: v = (int)value.parseDouble(); break;
+      case tsig: v = SignalPhase.values()[value.parseInt()].ordinal(); break;
+      default: v = value.parseInt();
+      }
+      values[row] = v;
+    }
+
+    @Override
+    void clear(int row) {
+      values[row] = 0;
+    }
+  }
+
+  /**
+   * Text fields, and fields that are not {@link VehicleFieldsEnum}. A null value is kept as null, not as an empty String
+   */
+  private static class StringColumn extends Column {
+    private final UnitsUsed units;
+    private String[] values = new String[0];
+
+    StringColumn(ObservationField field, UnitsUsed units) {
+      super(field);
+      this.units = units;
+    }
+
+    @Override
+    void grow(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    String stringAt(int row) {
+      return values[row];
+    }
+
+    @Override
+    void store(VehicleRec veh, int row) throws Exception {
+      String v;
+      if (field instanceof VehicleFieldsEnum) {
+        switch ((VehicleFieldsEnum)field) {
+        case color: v = veh.color; break;
+        case idtag: v = veh.idTag; break;
+        case bayid: v = veh.bayid; break;
+        case img: v = veh.img; break;
+        case imgfile: v = veh.imgfile; break;
+        default: throw new IllegalStateException(field.getId());
+        }
+      } else
+        v = field.get(veh, units);
+      values[row] = v;
+    }
+
+    @Override
+    void load(int row, VehicleRec result) throws Exception {
+      String v = values[row];
+      if (field instanceof VehicleFieldsEnum) {
+        switch ((VehicleFieldsEnum)field) {
+        case color: result.color = v; break;
+        case idtag: result.idTag = v; break;
+        case bayid: result.bayid = v; break;
+        case img: result.img = v; break;
+        case imgfile: result.imgfile = v; break;
+        default: throw new IllegalStateException(field.getId());
+        }
+      } else if (v != null)
+        field.set(v, units, result);
+    }
+
+    @Override
+    void parse(RawFmtTokenizer value, UnitConverter converter, UnitsUsed units, int row) throws Exception {
+      values[row] = value.toString();
+    }
+
+    @Override
+    void clear(int row) {
+      values[row] = null;
+    }
+  }
+
+  private static class AxleColumn {
+    final AxleFieldsEnum field;
+    double[] values = new double[0];
+
+    AxleColumn(AxleFieldsEnum field) {
+      this.field = field;
+    }
+
+    void grow(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    void store(AxleRec axle, int index) {
+      double v;
+      switch (field) {
+      case aspace: v = axle.aspaceMeters; break;
+      case amass: v = axle.amassKg; break;
+      case alrb: v = axle.alrb; break;
+      default: v = 0;
+      }
+      values[index] = v;
+    }
+
+    void parse(RawFmtTokenizer value, UnitConverter converter, int index) throws Exception {
+      if (field == AxleFieldsEnum.alrb)
+        values[index] = value.parseInt();
+      else
+        values[index] = (converter != null) ? converter.toMetric(value.parseDouble()) : value.parseDouble();
+    }
+
+    void load(int index, AxleRec result) {
+      double v = values[index];
+      switch (field) {
+      case aspace: result.aspaceMeters = v; break;
+      case amass: result.amassKg = v; break;
+      case alrb: result.alrb = (int)v; break;
+      default:
+      }
+    }
+  }
+}
@@ -27,5 +27,13 @@ public interface ObservationField extends IdDesc {
   public boolean isNumeric();
   public String get(VehicleRec veh, UnitsUsed units) throws Exception;
   public void set(String value, UnitsUsed units, VehicleRec result) throws Exception;
+  /**
+   * Sets the field from the current token, without creating a String for numeric fields
+   * @param value A tokenizer positioned on the value
+   * @param units
+   * @param result
+   * @throws Exception
+   */
+  public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception;
   public boolean equals(Object obsField);
 }
@@ -18,8 +18,16 @@
  */
 package geocounts.traffic.formats;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents an observation
@@ -52,9 +60,256 @@ public class ObservationRec extends RawTrafficDataTrafficElement implements Comp
   public double longitude;
   
   /**
+   * The {@link VehicleRecordDef} that created this, which gives the slot of each user defined field. May be null
+   */
+  VehicleRecordDef schema;
+  
+  /**
+   * The values of the user defined fields in the schema, by slot. Null until a value is set
+   */
+  private String[] userDefinedValues;
+  
+  /**
+   * User defined fields that are not in the schema. Null until one is set
+   */
+  private Map<String, String> otherUserDefined;
+  
+  /**
+   * The map is a live view: changes to it are set on this observation, and changes to the observation are seen in it.
+   * Null values are not allowed; remove a key instead
+   * @return The values of {@link UserDefinedObservationField user defined fields}, by key
    * @see UserDefinedObservationField
    */
-  public final Map<String, String> userdefined = new HashMap<String, String>();
+  public Map<String, String> getUserDefined() {
+    return new UserDefinedMap();
+  }
+  
+  /**
+   * @deprecated This was a public field. The values are now kept by slot. Use {@link #getUserDefined()}, or {@link #getUserDefined(String)} to read one value
+   */
+  @Deprecated
+  public Map<String, String> userdefined() {
+    return getUserDefined();
+  }
+  
+  /**
+   * 
+   * @param key
+   * @return The value of a {@link UserDefinedObservationField user defined field}, or null
+   */
+  public String getUserDefined(String key) {
+    int slot = schema != null ? schema.getUserDefinedSlot(key) : -1;
+    if (slot >= 0)
+      return getSlot(slot);
+    return otherUserDefined != null ? otherUserDefined.get(key) : null;
+  }
+  
+  /**
+   * 
+   * @param key
+   * @param value The value of a {@link UserDefinedObservationField user defined field}, or null to remove it
+   */
+  public void setUserDefined(String key, String value) {
+    int slot = schema != null ? schema.getUserDefinedSlot(key) : -1;
+    if (slot >= 0)
+      setSlot(slot, value);
+    else if (value != null) {
+      if (otherUserDefined == null)
+        otherUserDefined = new HashMap<String, String>(4);
+      otherUserDefined.put(key, value);
+    } else if (otherUserDefined != null)
+      otherUserDefined.remove(key);
+  }
+  
+  String getUserDefined(UserDefinedObservationField field) {
+    int slot = field.getSlot(schema);
+    return slot >= 0 ? getSlot(slot) : getUserDefined(field.getId());
+  }
+  
+  void setUserDefined(UserDefinedObservationField field, String value) {
+    int slot = field.getSlot(schema);
+    if (slot >= 0)
+      setSlot(slot, value);
+    else
+      setUserDefined(field.getId(), value);
+  }
+  
+  private String getSlot(int slot) {
+    return (userDefinedValues != null) && (slot < userDefinedValues.length) ? userDefinedValues[slot] : null;
+  }
+  
+  private void setSlot(int slot, String value) {
+    if ((userDefinedValues == null) || (slot >= userDefinedValues.length)) {
+      if (value == null)
+        return;
+      String[] grown = new String[Math.max(slot + 1, schema.numberOfUserDefinedSlots())];
+      if (userDefinedValues != null)
+        System.arraycopy(userDefinedValues, 0, grown, 0, userDefinedValues.length);
+      userDefinedValues = grown;
+    }
+    userDefinedValues[slot] = value;
+  }
+  
+  public void clearUserDefined() {
+    if (userDefinedValues != null)
+      Arrays.fill(userDefinedValues, null);
+    if (otherUserDefined != null)
+      otherUserDefined.clear();
+  }
+  
+  /**
+   * The user defined fields in the schema's slots, then the others
+   */
+  private class UserDefinedMap extends AbstractMap<String, String> {
+
+    @Override
+    public String get(Object key) {
+      return key instanceof String ? getUserDefined((String)key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+      if (value == null)
+        throw new NullPointerException("User defined field " + key + " has no value. Remove it instead");
+      String result = getUserDefined(key);
+      setUserDefined(key, value);
+      return result;
+    }
+
+    @Override
+    public String remove(Object key) {
+      if (!(key instanceof String))
+        return null;
+      String result = getUserDefined((String)key);
+      if (result != null)
+        setUserDefined((String)key, null);
+      return result;
+    }
+
+    @Override
+    public void clear() {
+      clearUserDefined();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          return new UserDefinedIterator(keys());
+        }
+
+        @Override
+        public int size() {
+          return keys().size();
+        }
+
+        @Override
+        public void clear() {
+          clearUserDefined();
+        }
+      };
+    }
+  }
+
+  /**
+   * 
+   * @return The keys of the user defined fields that have a value, in slot order then the others
+   */
+  private List<String> keys() {
+    ArrayList<String> result = new ArrayList<String>();
+    if (userDefinedValues != null)
+      for (int slot=0; slot<userDefinedValues.length; slot++)
+        if (userDefinedValues[slot] != null)
+          result.add(schema.getUserDefinedKey(slot));
+    if (otherUserDefined != null)
+      result.addAll(otherUserDefined.keySet());
+    return result;
+  }
+
+  /**
+   * Iterates over the keys that had a value when it was created, so the observation can be changed while iterating
+   */
+  private class UserDefinedIterator implements Iterator<Map.Entry<String, String>> {
+    private final Iterator<String> keys;
+    private String last;
+
+    UserDefinedIterator(List<String> keys) {
+      this.keys = keys.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return keys.hasNext();
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+      last = keys.next();
+      return new UserDefinedEntry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last == null)
+        throw new IllegalStateException();
+      setUserDefined(last, null);
+      last = null;
+    }
+  }
+
+  /**
+   * A user defined field, read and set by its key
+   */
+  private class UserDefinedEntry implements Map.Entry<String, String> {
+    private final String key;
+
+    UserDefinedEntry(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public String getValue() {
+      return getUserDefined(key);
+    }
+
+    @Override
+    public String setValue(String value) {
+      if (value == null)
+        throw new NullPointerException("User defined field " + key + " has no value. Remove it instead");
+      String result = getUserDefined(key);
+      setUserDefined(key, value);
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+      return key.equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode() ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + getValue();
+    }
+  }
   
   @Override
   public int compareTo(ObservationRec o) {
@@ -64,7 +319,7 @@ public class ObservationRec extends RawTrafficDataTrafficElement implements Comp
       if (diff == 0) {
         long diff2 = this.id - o.id;
         if (diff2 != 0)
-          return diff2 > 0 ? 1 : 0;
+          return diff2 > 0 ? 1 : -1;
       }
     }
     return diff;
@@ -0,0 +1,246 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+
+/**
+ * Parses and formats the times of body records, in GMT:
+ * <ul>
+ * <li>yyyy/MM/dd,HH:mm:ss.SSS for {@link EnumRecordType#V observations} and {@link EnumRecordType#M monitoring events}</li>
+ * <li>yyyy/MM/dd,HH for {@link EnumRecordType#T tallies}</li>
+ * </ul>
+ * Records in a file are mostly on the same day as the previous record, so the date part is cached and only the time of day is computed.
+ * Times from the year 1600 to 9999 in exactly these layouts are handled directly. Anything else is passed to a {@link java.text.SimpleDateFormat}
+ * of this codec with the same layout, so results are the same as {@link java.text.SimpleDateFormat}. It is not the header's date format object,
+ * which has the same layouts.
+ * <br />
+ * This object caches state and is not thread safe. Use one per decoder or encoder.
+ * @see RawTrafficDataHeader#getObservationDateFormat()
+ * @see RawTrafficDataHeader#getTallyDateFormat()
+ */
+public final class RawFmtDateCodec {
+  private static final long MSECS_PER_DAY = 86400000L;
+  private static final long MIN_TIME = toEpochDay(1600, 1, 1) * MSECS_PER_DAY;
+  private static final long MAX_TIME = toEpochDay(10000, 1, 1) * MSECS_PER_DAY;
+  private static final int DATE_LENGTH = 10;
+  private static final int TALLY_TIME_LENGTH = 13;
+  private static final int OBSERVATION_TIME_LENGTH = 23;
+
+  private final char[] parsedDate = new char[DATE_LENGTH];
+  private long parsedDayStart = Long.MIN_VALUE;
+
+  private final char[] formattedDate = new char[DATE_LENGTH];
+  private long formattedDayStart = Long.MIN_VALUE;
+
+  private DateFormat tallyDF = null;
+  private DateFormat obsDF = null;
+
+  /**
+   *
+   * @param text
+   * @param from Start of the time in the text
+   * @param to End (exclusive) of the time in the text
+   * @return The time as yyyy/MM/dd,HH:mm:ss.SSS
+   * @throws ParseException
+   */
+  public long parseObservationTime(CharSequence text, int from, int to) throws ParseException {
+    if ((to - from == OBSERVATION_TIME_LENGTH)
+        && (text.charAt(from + 10) == ',') && (text.charAt(from + 13) == ':') && (text.charAt(from + 16) == ':') && (text.charAt(from + 19) == '.')) {
+      long dayStart = parseDayStart(text, from);
+      int hour = digits(text, from + 11, 2);
+      int minute = digits(text, from + 14, 2);
+      int second = digits(text, from + 17, 2);
+      int msecs = digits(text, from + 20, 3);
+      if ((dayStart != Long.MIN_VALUE) && (hour >= 0) && (hour < 24) && (minute >= 0) && (minute < 60) && (second >= 0) && (second < 60) && (msecs >= 0))
+        return dayStart + ((hour*60L + minute)*60L + second)*1000L + msecs;
+    }
+    if (obsDF == null)
+      obsDF = RawFmtUtils.sdfHeaderV();
+    return obsDF.parse(text.subSequence(from, to).toString()).getTime();
+  }
+
+  /**
+   *
+   * @param text
+   * @param from Start of the time in the text
+   * @param to End (exclusive) of the time in the text
+   * @return The time as yyyy/MM/dd,HH
+   * @throws ParseException
+   */
+  public long parseTallyTime(CharSequence text, int from, int to) throws ParseException {
+    if ((to - from == TALLY_TIME_LENGTH) && (text.charAt(from + 10) == ',')) {
+      long dayStart = parseDayStart(text, from);
+      int hour = digits(text, from + 11, 2);
+      if ((dayStart != Long.MIN_VALUE) && (hour >= 0) && (hour < 24))
+        return dayStart + hour*3600000L;
+    }
+    if (tallyDF == null)
+      tallyDF = RawFmtUtils.sdfHeaderT();
+    return tallyDF.parse(text.subSequence(from, to).toString()).getTime();
+  }
+
+  /**
+   *
+   * @param time
+   * @param result Appended with yyyy/MM/dd,HH:mm:ss.SSS
+   */
+  public void appendObservationTime(long time, StringBuilder result) {
+    if ((time < MIN_TIME) || (time >= MAX_TIME)) {
+      if (obsDF == null)
+        obsDF = RawFmtUtils.sdfHeaderV();
+      result.append(obsDF.format(time));
+      return;
+    }
+    int msecsOfDay = appendDate(time, result);
+    append2(result, msecsOfDay / 3600000);
+    result.append(':');
+    append2(result, (msecsOfDay / 60000) % 60);
+    result.append(':');
+    append2(result, (msecsOfDay / 1000) % 60);
+    result.append('.');
+    int msecs = msecsOfDay % 1000;
+    result.append((char)('0' + msecs / 100));
+    append2(result, msecs % 100);
+  }
+
+  /**
+   *
+   * @param time
+   * @param result Appended with yyyy/MM/dd,HH
+   */
+  public void appendTallyTime(long time, StringBuilder result) {
+    if ((time < MIN_TIME) || (time >= MAX_TIME)) {
+      if (tallyDF == null)
+        tallyDF = RawFmtUtils.sdfHeaderT();
+      result.append(tallyDF.format(time));
+      return;
+    }
+    int msecsOfDay = appendDate(time, result);
+    append2(result, msecsOfDay / 3600000);
+  }
+
+  /**
+   * Appends yyyy/MM/dd,
+   * @return Milliseconds since the start of the day
+   */
+  private int appendDate(long time, StringBuilder result) {
+    long dayStart = Math.floorDiv(time, MSECS_PER_DAY) * MSECS_PER_DAY;
+    if (dayStart != formattedDayStart) {
+      long epochDay = dayStart / MSECS_PER_DAY;
+      int[] ymd = fromEpochDay(epochDay);
+      setDigits(formattedDate, 0, ymd[0], 4);
+      formattedDate[4] = '/';
+      setDigits(formattedDate, 5, ymd[1], 2);
+      formattedDate[7] = '/';
+      setDigits(formattedDate, 8, ymd[2], 2);
+      formattedDayStart = dayStart;
+    }
+    result.append(formattedDate);
+    result.append(',');
+    return (int)(time - dayStart);
+  }
+
+  /**
+   * @return The start of the day as yyyy/MM/dd, or Long.MIN_VALUE if it is not in that layout
+   */
+  private long parseDayStart(CharSequence text, int from) {
+    if (parsedDayStart != Long.MIN_VALUE) {
+      boolean same = true;
+      for (int i=0; same && (i<DATE_LENGTH); i++)
+        same = text.charAt(from + i) == parsedDate[i];
+      if (same)
+        return parsedDayStart;
+    }
+    if ((text.charAt(from + 4) != '/') || (text.charAt(from + 7) != '/'))
+      return Long.MIN_VALUE;
+    int year = digits(text, from, 4);
+    int month = digits(text, from + 5, 2);
+    int day = digits(text, from + 8, 2);
+    if ((year < 1600) || (month < 1) || (month > 12) || (day < 1) || (day > daysInMonth(year, month)))
+      return Long.MIN_VALUE;
+    for (int i=0; i<DATE_LENGTH; i++)
+      parsedDate[i] = text.charAt(from + i);
+    parsedDayStart = toEpochDay(year, month, day) * MSECS_PER_DAY;
+    return parsedDayStart;
+  }
+
+  /**
+   * @return The value of the digits, or -1 if any character is not a digit from 0 to 9
+   */
+  private static int digits(CharSequence text, int from, int count) {
+    int result = 0;
+    for (int i=from; i<from+count; i++) {
+      char c = text.charAt(i);
+      if ((c < '0') || (c > '9'))
+        return -1;
+      result = result*10 + (c - '0');
+    }
+    return result;
+  }
+
+  private static void setDigits(char[] result, int from, int value, int count) {
+    for (int i=from+count-1; i>=from; i--) {
+      result[i] = (char)('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private static void append2(StringBuilder result, int value) {
+    result.append((char)('0' + value / 10));
+    result.append((char)('0' + value % 10));
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+    case 2: return ((year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0))) ? 29 : 28;
+    case 4: case 6: case 9: case 11: return 30;
+    default: return 31;
+    }
+  }
+
+  /**
+   * Days since 1970/01/01 in the Gregorian calendar
+   */
+  static long toEpochDay(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * @return year, month (1 to 12) and day (1 to 31) of a day since 1970/01/01 in the Gregorian calendar
+   */
+  static int[] fromEpochDay(long epochDay) {
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long dayOfEra = z - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long mp = (5 * dayOfYear + 2) / 153;
+    int day = (int)(dayOfYear - (153 * mp + 2) / 5 + 1);
+    int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+    int year = (int)(yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+    return new int[]{year, month, day};
+  }
+}
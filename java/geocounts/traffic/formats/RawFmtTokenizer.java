@@ -0,0 +1,455 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+/**
+ * Walks the delimited fields of a line in place.
+ * Each call to {@link #next()} moves to the next token, which can then be parsed as a number without creating a String.
+ * Tokens follow the same rules as {@link RawFmtUtils#split(String, char)}: an empty line has no tokens and a trailing delimiter is followed by an empty token.
+ * <pre>
+ * RawFmtTokenizer parts = new RawFmtTokenizer().reset(line, ';');
+ * while (parts.next()) {
+ *   RawFmtTokenizer values = parts.split(',');
+ *   while (values.next())
+ *     total += values.parseDouble();
+ * }
+ * </pre>
+ * In {@link #setLenient(boolean) lenient} mode a token that is not a number parses as 0 and is counted as an {@link #takeErrors() error}, without throwing.
+ * <br />
+ * This object is reused from line to line and is not thread safe.
+ */
+public final class RawFmtTokenizer {
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /**
+   * Numbers with more significant digits than this are parsed by {@link Double#parseDouble(String)}
+   */
+  private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+
+  /**
+   * The only characters, other than digits, that {@link Double#parseDouble(String)} may accept
+   */
+  private static final String DOUBLE_CHARS = "+-.eEdDfFxXpPaAbBcCNnIity \t\n\r\f";
+
+  private CharSequence line;
+  private int rangeStart;
+  private int end;
+  private int pos;
+  private boolean hasMore;
+  private char delim;
+
+  private int tokenStart;
+  private int tokenEnd;
+
+  private RawFmtTokenizer child;
+
+  /**
+   * The tokenizer that was {@link #reset(CharSequence, char) reset} with the line. Split tokenizers share its mode and error count
+   */
+  private RawFmtTokenizer root = this;
+  private boolean lenient;
+  private int errors;
+
+  /**
+   * @param line
+   * @param delim The delimiter between tokens
+   * @return This object, positioned before the first token
+   */
+  public RawFmtTokenizer reset(CharSequence line, char delim) {
+    return reset(line, 0, line.length(), delim);
+  }
+
+  /**
+   * @param line
+   * @param from Start of the range to tokenize
+   * @param to End (exclusive) of the range to tokenize
+   * @param delim The delimiter between tokens
+   * @return This object, positioned before the first token
+   */
+  public RawFmtTokenizer reset(CharSequence line, int from, int to, char delim) {
+    this.line = line;
+    this.rangeStart = from;
+    this.pos = from;
+    this.end = to;
+    this.hasMore = to > from;
+    this.delim = delim;
+    this.tokenStart = from;
+    this.tokenEnd = from;
+    return this;
+  }
+
+  /**
+   *
+   * @param value
+   * @return A tokenizer whose current token is the whole value
+   */
+  public static RawFmtTokenizer of(CharSequence value) {
+    RawFmtTokenizer result = new RawFmtTokenizer().reset(value, 0, value.length(), '\0');
+    result.tokenEnd = value.length();
+    result.hasMore = false;
+    return result;
+  }
+
+  /**
+   * Moves to the next token
+   * @return False if there are no more tokens
+   */
+  public boolean next() {
+    if (!hasMore)
+      return false;
+    tokenStart = pos;
+    int i = pos;
+    while ((i < end) && (line.charAt(i) != delim))
+      i++;
+    tokenEnd = i;
+    if (i < end)
+      pos = i + 1;
+    else
+      hasMore = false;
+    return true;
+  }
+
+  /**
+   * Moves to the next token, which must exist
+   * @return This object
+   * @throws GCTrafficFormatException If there are no more tokens
+   */
+  public RawFmtTokenizer nextToken() throws GCTrafficFormatException {
+    if (!next())
+      RawFmtUtils.throwException(this, "Missing field", line.toString());
+    return this;
+  }
+
+  /**
+   * Counts the tokens from the start of the range, without moving
+   * @return The number of tokens
+   */
+  public int countTokens() {
+    return countTokens(line, rangeStart, end, delim);
+  }
+
+  static int countTokens(CharSequence line, int from, int to, char delim) {
+    if (to <= from)
+      return 0;
+    int result = 1;
+    for (int i=from; i<to; i++)
+      if (line.charAt(i) == delim)
+        result++;
+    return result;
+  }
+
+  /**
+   * Splits the current token. The same child object is returned each time, so only one split can be walked at a time.
+   * @param childDelim The delimiter between the current token's tokens
+   * @return A tokenizer over the current token, positioned before its first token
+   */
+  public RawFmtTokenizer split(char childDelim) {
+    if (child == null) {
+      child = new RawFmtTokenizer();
+      child.root = root;
+    }
+    return child.reset(line, tokenStart, tokenEnd, childDelim);
+  }
+
+  /**
+   *
+   * @return Start position of the current token in the line
+   */
+  public int start() {
+    return tokenStart;
+  }
+
+  /**
+   *
+   * @return End position (exclusive) of the current token in the line
+   */
+  public int end() {
+    return tokenEnd;
+  }
+
+  /**
+   *
+   * @return The number of characters in the current token
+   */
+  public int length() {
+    return tokenEnd - tokenStart;
+  }
+
+  public boolean isEmpty() {
+    return tokenEnd == tokenStart;
+  }
+
+  /**
+   *
+   * @param index From 0 to {@link #length()}-1
+   * @return A character of the current token
+   */
+  public char charAt(int index) {
+    return line.charAt(tokenStart + index);
+  }
+
+  /**
+   * Parses the current token as {@link Integer#parseInt(String)} would
+   * @return The value, or 0 if lenient and the token is not a number
+   * @throws NumberFormatException
+   */
+  public int parseInt() {
+    int len = tokenEnd - tokenStart;
+    if ((len == 0) || (len > 10))
+      return parseIntSlow();
+    int i = tokenStart;
+    boolean negative = false;
+    char c = line.charAt(i);
+    if ((c == '-') || (c == '+')) {
+      negative = c == '-';
+      i++;
+      if (i == tokenEnd)
+        return parseIntSlow();
+    }
+    long result = 0;
+    for (; i<tokenEnd; i++) {
+      c = line.charAt(i);
+      if ((c < '0') || (c > '9'))
+        return parseIntSlow();
+      result = result*10 + (c - '0');
+    }
+    if (negative)
+      result = -result;
+    if ((result < Integer.MIN_VALUE) || (result > Integer.MAX_VALUE))
+      return parseIntSlow();
+    return (int)result;
+  }
+
+  /**
+   * Parses the current token as {@link Long#parseLong(String)} would
+   * @return The value, or 0 if lenient and the token is not a number
+   * @throws NumberFormatException
+   */
+  public long parseLong() {
+    int len = tokenEnd - tokenStart;
+    if ((len == 0) || (len > 18))
+      return parseLongSlow();
+    int i = tokenStart;
+    boolean negative = false;
+    char c = line.charAt(i);
+    if ((c == '-') || (c == '+')) {
+      negative = c == '-';
+      i++;
+      if (i == tokenEnd)
+        return parseLongSlow();
+    }
+    long result = 0;
+    for (; i<tokenEnd; i++) {
+      c = line.charAt(i);
+      if ((c < '0') || (c > '9'))
+        return parseLongSlow();
+      result = result*10 + (c - '0');
+    }
+    return negative ? -result : result;
+  }
+
+  /**
+   * Parses the current token as {@link Double#parseDouble(String)} would.
+   * Plain decimals such as -12.345 are parsed directly. Anything else, such as exponents, is passed to {@link Double#parseDouble(String)}
+   * @return The value, or 0 if lenient and the token is not a number
+   * @throws NumberFormatException
+   */
+  public double parseDouble() {
+    double result = parseDoubleFast();
+    if (Double.isNaN(result))
+      return parseDoubleSlow();
+    return result;
+  }
+
+  /**
+   * Parses the current token as {@link #parseDouble()} does, but a token that is not a number is not counted and does not throw
+   * @return The value, or NaN if the token is empty or not a number
+   */
+  public double parseDoubleOrNaN() {
+    double result = parseDoubleFast();
+    if (!Double.isNaN(result) || !mayBeNumber(true))
+      return result;
+    try {
+      return Double.parseDouble(toString());
+    } catch (NumberFormatException ex) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Plain decimals such as -12.345
+   * @return The value, or NaN if the token must be parsed by {@link Double#parseDouble(String)}
+   */
+  private double parseDoubleFast() {
+    int i = tokenStart;
+    if (i == tokenEnd)
+      return Double.NaN;
+    boolean negative = false;
+    char c = line.charAt(i);
+    if ((c == '-') || (c == '+')) {
+      negative = c == '-';
+      i++;
+    }
+    long mantissa = 0;
+    boolean hasDigits = false;
+    int significantDigits = 0;
+    int fractionDigits = 0;
+    boolean inFraction = false;
+    for (; i<tokenEnd; i++) {
+      c = line.charAt(i);
+      if ((c >= '0') && (c <= '9')) {
+        hasDigits = true;
+        // leading zeros are not significant
+        if (((mantissa != 0) || (c != '0')) && (++significantDigits > MAX_FAST_DOUBLE_DIGITS))
+          return Double.NaN;
+        mantissa = mantissa*10 + (c - '0');
+        if (inFraction)
+          fractionDigits++;
+      } else if ((c == '.') && !inFraction) {
+        inFraction = true;
+      } else
+        return Double.NaN;
+    }
+    if (!hasDigits || (fractionDigits >= POWERS_OF_TEN.length))
+      return Double.NaN;
+    // the mantissa and power of ten are both exact, so one division gives the correctly rounded value
+    double result = mantissa / POWERS_OF_TEN[fractionDigits];
+    return negative ? -result : result;
+  }
+
+  private int parseIntSlow() {
+    if (!root.lenient)
+      return Integer.parseInt(toString());
+    if (!mayBeNumber(false))
+      return (int)badNumber();
+    try {
+      return Integer.parseInt(toString());
+    } catch (NumberFormatException ex) {
+      return (int)badNumber();
+    }
+  }
+
+  private long parseLongSlow() {
+    if (!root.lenient)
+      return Long.parseLong(toString());
+    if (!mayBeNumber(false))
+      return (long)badNumber();
+    try {
+      return Long.parseLong(toString());
+    } catch (NumberFormatException ex) {
+      return (long)badNumber();
+    }
+  }
+
+  private double parseDoubleSlow() {
+    if (!root.lenient)
+      return Double.parseDouble(toString());
+    if (!mayBeNumber(true))
+      return badNumber();
+    try {
+      return Double.parseDouble(toString());
+    } catch (NumberFormatException ex) {
+      return badNumber();
+    }
+  }
+
+  /**
+   * Rules out most bad values, such as empty tokens, "N/A" or "null", without asking the JDK parsers to throw
+   * @param decimal If true, allow the characters of {@link Double#parseDouble(String)}
+   * @return False if the current token cannot be a number
+   */
+  private boolean mayBeNumber(boolean decimal) {
+    if (tokenEnd == tokenStart)
+      return false;
+    for (int i=tokenStart; i<tokenEnd; i++) {
+      char c = line.charAt(i);
+      if (Character.isDigit(c) || (c == '-') || (c == '+'))
+        continue;
+      if (!decimal || (DOUBLE_CHARS.indexOf(c) < 0))
+        return false;
+    }
+    return true;
+  }
+
+  private double badNumber() {
+    root.errors++;
+    return 0;
+  }
+
+  /**
+   * In lenient mode, tokens that are not numbers parse as 0, and they and any other bad values are counted as errors instead of throwing.
+   * This also applies to tokenizers {@link #split(char) split} from this one
+   * @param value
+   * @return This object
+   */
+  public RawFmtTokenizer setLenient(boolean value) {
+    root.lenient = value;
+    return this;
+  }
+
+  public boolean isLenient() {
+    return root.lenient;
+  }
+
+  /**
+   * Counts a bad value, such as a field that is not in the header, if lenient
+   * @return True if lenient, in which case the caller should skip the value. False if the caller should throw
+   */
+  public boolean countError() {
+    if (!root.lenient)
+      return false;
+    root.errors++;
+    return true;
+  }
+
+  /**
+   *
+   * @return The number of errors counted since the last call
+   */
+  public int takeErrors() {
+    int result = root.errors;
+    root.errors = 0;
+    return result;
+  }
+
+  /**
+   *
+   * @param value
+   * @return True if the current token has the same characters as the value
+   */
+  public boolean equalsString(String value) {
+    if (value.length() != length())
+      return false;
+    for (int i=0; i<value.length(); i++)
+      if (value.charAt(i) != line.charAt(tokenStart + i))
+        return false;
+    return true;
+  }
+
+  /**
+   * @return The current token as a String
+   */
+  @Override
+  public String toString() {
+    return line.subSequence(tokenStart, tokenEnd).toString();
+  }
+}
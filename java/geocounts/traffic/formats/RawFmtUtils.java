@@ -21,7 +21,6 @@ package geocounts.traffic.formats;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.SimpleTimeZone;
@@ -38,27 +37,56 @@ public class RawFmtUtils {
   public static final double POUNDS_PER_KILOGRAM = 2.20462;
   public static long MSEC_IN_HOUR = 3600000;
   public static long MSEC_IN_DAY = 86400000;
-  public static final DecimalFormat df1 = new DecimalFormat("0.0");
-  public static final DecimalFormat df3 = new DecimalFormat("0.000");
-  public static final DecimalFormat df6 = new DecimalFormat("0.000000");
+  /**
+   * This is shared, so threads take turns to use it, and it cannot be changed
+   * @deprecated Use {@link #formatFixed(double, int) formatFixed(value, 1)}, which does not wait for other threads
+   */
+  @Deprecated
+  public static final DecimalFormat df1 = new SharedDecimalFormat("0.0");
+  /**
+   * This is shared, so threads take turns to use it, and it cannot be changed
+   * @deprecated Use {@link #formatFixed(double, int) formatFixed(value, 3)}, which does not wait for other threads
+   */
+  @Deprecated
+  public static final DecimalFormat df3 = new SharedDecimalFormat("0.000");
+  /**
+   * This is shared, so threads take turns to use it, and it cannot be changed
+   * @deprecated Use {@link #formatFixed(double, int) formatFixed(value, 6)}, which does not wait for other threads
+   */
+  @Deprecated
+  public static final DecimalFormat df6 = new SharedDecimalFormat("0.000000");
   
-  private static DecimalFormat df;
+  /**
+   * DecimalFormat is not thread safe, so each thread formats with its own
+   */
+  private static final ThreadLocal<DecimalFormat> df = new ThreadLocal<DecimalFormat>() {
+    @Override
+    protected DecimalFormat initialValue() {
+      DecimalFormat result = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+      result.setMaximumFractionDigits(340); //340 = DecimalFormat.DOUBLE_FRACTION_DIGITS
+      return result;
+    }
+  };
   
   public static final String LINE_FEED = "\r\n";
   
-  private static SimpleTimeZone GMT = new SimpleTimeZone(0, "GMT+00:00");
+  private static final SimpleTimeZone GMT = new SimpleTimeZone(0, "GMT+00:00");
 
-  private static final SimpleDateFormat ISO8601 = simpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+  /*
+   * SimpleDateFormat is not thread safe, so the shared formats below have one instance for each thread
+   */
+  
+  private static final ThreadLocal<SimpleDateFormat> ISO8601 = perThread("yyyy-MM-dd'T'HH:mm:ss");
   
   /**
    * yyyy-MM-dd
    */
-  private static final SimpleDateFormat ISO8601_DATEONLY = simpleDateFormat("yyyy-MM-dd");
+  private static final ThreadLocal<SimpleDateFormat> ISO8601_DATEONLY = perThread("yyyy-MM-dd");
 
   /**
    * HH:mm:ss.SSS
    */
-  private static final SimpleDateFormat ISO8601_TIMEONLY = simpleDateFormat("HH:mm:ss.SSS");
+  private static final ThreadLocal<SimpleDateFormat> ISO8601_TIMEONLY = perThread("HH:mm:ss.SSS");
 
   /**
    * A simple date format as: yyyy-MM-dd'T'HH:mm:ss.SSS<br />
@@ -68,10 +96,10 @@ public class RawFmtUtils {
     return simpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
   }
   
-  private static final SimpleDateFormat ISO8601_MSECS = simpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+  private static final ThreadLocal<SimpleDateFormat> ISO8601_MSECS = perThread("yyyy-MM-dd'T'HH:mm:ss.SSS");
   
   public static String ISO8601_MSECS_format(long value) {
-    return ISO8601_MSECS.format(value);
+    return ISO8601_MSECS.get().format(value);
   }
   
   /**
@@ -79,7 +107,7 @@ public class RawFmtUtils {
    * @return Formatted date value as {@link #ISO8601()}
    */
   public static final String ISO8601_format(long value) {
-    return ISO8601.format(value);
+    return ISO8601.get().format(value);
   }
 
   /**
@@ -97,6 +125,15 @@ public class RawFmtUtils {
   protected static SimpleDateFormat sdfHeaderT() {
     return simpleDateFormat("yyyy/MM/dd,HH");
   }
+  
+  private static final ThreadLocal<SimpleDateFormat> HEADER_T = perThread("yyyy/MM/dd,HH");
+  
+  /**
+   * @return The {@link #sdfHeaderT()} of the calling thread
+   */
+  static SimpleDateFormat sdfHeaderTOfThread() {
+    return HEADER_T.get();
+  }
 
   /**
    * yyyy/MM/dd
@@ -111,12 +148,21 @@ public class RawFmtUtils {
     return simpleDateFormat("yyyy/MM/dd,HH:mm:ss.SSS");
   }
   
+  private static final ThreadLocal<SimpleDateFormat> HEADER_V = perThread("yyyy/MM/dd,HH:mm:ss.SSS");
+  
+  /**
+   * @return The {@link #sdfHeaderV()} of the calling thread
+   */
+  static SimpleDateFormat sdfHeaderVOfThread() {
+    return HEADER_V.get();
+  }
+  
   /**
    * @param value
    * @return Formatted date value as {@link #ISO8601_DATEONLY()}
    */
   public static final String ISO8601_DATEONLY_format(long value) {
-    return ISO8601_DATEONLY.format(value);
+    return ISO8601_DATEONLY.get().format(value);
   }
   
   /**
@@ -124,7 +170,7 @@ public class RawFmtUtils {
    * @return Formatted date value as {@link #ISO8601_TIMEONLY()}
    */
   public static final String ISO8601_TIMEONLY_format(long value) {
-    return ISO8601_TIMEONLY.format(value);
+    return ISO8601_TIMEONLY.get().format(value);
   }
   
   /**
@@ -149,65 +195,59 @@ public class RawFmtUtils {
     if (line.length() == 0)
       return new String[0];
     
-    ArrayList<Integer> points = new ArrayList<Integer>();
-    for (int pos=0; pos<line.length(); pos++) {
-      if (line.charAt(pos) == c)
-        points.add(pos);
+    String[] result = new String[RawFmtTokenizer.countTokens(line, 0, line.length(), c)];
+    if (result.length == 1) {
+      result[0] = line;
+      return result;
     }
-    if (points.size() == 0)
-      return new String[]{line};
-    
-    int from, to;
-    
-    String[] result = new String[points.size()+1];
-    for (int i=0; i<points.size(); i++) {
-      from = i > 0 ? points.get(i-1)+1 : 0;
-      to = points.get(i);
-      if (to-from > 0)
-        result[i] = line.substring(from, to);
-      else
-        result[i] = "";
+    int from = 0;
+    for (int i=0; i<result.length-1; i++) {
+      int to = line.indexOf(c, from);
+      result[i] = line.substring(from, to);
+      from = to + 1;
     }
-    // get the last point
-    from = points.get(points.size()-1);
-    from++;
-    if (from >= line.length())
-      result[result.length-1] = "";
-    else
-      result[result.length-1] = line.substring(from);
+    result[result.length-1] = line.substring(from);
     
     return result;
   }
-  
   public static int[] splitInt(String line, char c) {
     if (line == null)
       return null;
     if (line.length() == 0)
       return new int[0];
     
-    String[] tokens = split(line, c);
-    int[] result = new int[tokens.length];
-    for (int i=0; i<result.length; i++)
-      if (tokens[i].length() == 0)
-        result[i] = 0;
-      else
-        result[i] = Integer.parseInt(tokens[i]);
+    return splitInt(new RawFmtTokenizer().reset(line, c));
+  }
+  /**
+   * 
+   * @param tokens Positioned before the first token
+   * @return Each token as an int. Empty tokens are 0
+   */
+  public static int[] splitInt(RawFmtTokenizer tokens) {
+    int[] result = new int[tokens.countTokens()];
+    for (int i=0; tokens.next(); i++)
+      if (!tokens.isEmpty())
+        result[i] = tokens.parseInt();
     return result;
   }
-
   public static double[] splitDouble(String line, char c) {
     if (line == null)
       return null;
     if (line.length() == 0)
       return new double[0];
     
-    String[] tokens = split(line, c);
-    double[] result = new double[tokens.length];
-    for (int i=0; i<result.length; i++)
-      if (tokens[i].length() == 0)
-        result[i] = 0;
-      else
-        result[i] = Double.parseDouble(tokens[i]);
+    return splitDouble(new RawFmtTokenizer().reset(line, c));
+  }
+  /**
+   * 
+   * @param tokens Positioned before the first token
+   * @return Each token as a double. Empty tokens are 0
+   */
+  public static double[] splitDouble(RawFmtTokenizer tokens) {
+    double[] result = new double[tokens.countTokens()];
+    for (int i=0; tokens.next(); i++)
+      if (!tokens.isEmpty())
+        result[i] = tokens.parseDouble();
     return result;
   }
   
@@ -222,6 +262,19 @@ public class RawFmtUtils {
     return result;
   }
   
+  /**
+   * @param fmt
+   * @return A {@link #simpleDateFormat(String)} for each thread that calls get()
+   */
+  private static ThreadLocal<SimpleDateFormat> perThread(final String fmt) {
+    return new ThreadLocal<SimpleDateFormat>() {
+      @Override
+      protected SimpleDateFormat initialValue() {
+        return simpleDateFormat(fmt);
+      }
+    };
+  }
+  
   /**
    * This sets the minute, second and millisecond to zero
    * @param time
@@ -390,7 +443,116 @@ public class RawFmtUtils {
   }
   
   public static String formatDouble(double value) {
-    return df.format(value);
+    return df.get().format(value);
+  }
+  
+  private static final long[] FIXED_SCALES = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+  
+  /**
+   * Scaled values below this are rounded with doubles. Their error is far smaller than {@link #FIXED_TIE_MARGIN}
+   */
+  private static final double MAX_FAST_FIXED = 1e12;
+  
+  /**
+   * Scaled values this close to halfway between two results are formatted by DecimalFormat itself, which rounds them by its own rules
+   */
+  private static final double FIXED_TIE_MARGIN = 1e-3;
+  
+  /**
+   * 
+   * @param value
+   * @return Whole numbers without a decimal point, so integer fields can parse them, otherwise {@link Double#toString(double)}
+   */
+  static String formatMetric(double value) {
+    if ((value == Math.rint(value)) && (Math.abs(value) < 1e15))
+      return Long.toString((long)value);
+    return Double.toString(value);
+  }
+  
+  /**
+   * 
+   * @param value
+   * @param decimals The number of digits after the decimal point
+   * @return The value as {@link #appendFixed(StringBuilder, double, int)}
+   */
+  public static String formatFixed(double value, int decimals) {
+    StringBuilder result = new StringBuilder(24);
+    appendFixed(result, value, decimals);
+    return result.toString();
+  }
+  
+  /**
+   * Appends a value with a fixed number of decimals, exactly as a DecimalFormat of "0.0", "0.000" or "0.000000" formats it in an English locale:
+   * rounded half even, without grouping, and with a minus sign on negative values that round to zero.
+   * This is thread safe, and does not create a String unless the value is very large or very close to halfway between two results.
+   * Those values are formatted by a DecimalFormat of the thread, so they round exactly as DecimalFormat does,
+   * e.g. 5.0E-4 with 3 decimals is "0.000" although its binary value is a little above halfway.
+   * @param result
+   * @param value
+   * @param decimals The number of digits after the decimal point
+   */
+  public static void appendFixed(StringBuilder result, double value, int decimals) {
+    if (Double.isNaN(value) || Double.isInfinite(value) || (decimals < 0) || (decimals >= FIXED_SCALES.length)) {
+      result.append(fixedFormat(decimals).format(value));
+      return;
+    }
+    // DecimalFormat keeps the sign of -0.0
+    boolean negative = (value < 0) || ((value == 0) && (1/value < 0));
+    double abs = Math.abs(value);
+    long scale = FIXED_SCALES[decimals];
+    double scaled = abs * scale;
+    if (scaled >= MAX_FAST_FIXED) {
+      result.append(fixedFormat(decimals).format(value));
+      return;
+    }
+    double floor = Math.floor(scaled);
+    // both are exact, as floor is within one of scaled
+    double fraction = scaled - floor;
+    if (Math.abs(fraction - 0.5) < FIXED_TIE_MARGIN) {
+      result.append(fixedFormat(decimals).format(value));
+      return;
+    }
+    long units = (long)floor + (fraction > 0.5 ? 1 : 0);
+    
+    if (negative)
+      result.append('-');
+    result.append(units / scale);
+    if (decimals > 0) {
+      result.append('.');
+      long fractionDigits = units % scale;
+      for (long s = scale / 10; s > 0; s /= 10) {
+        result.append((char)('0' + fractionDigits / s));
+        fractionDigits %= s;
+      }
+    }
+  }
+  
+  /**
+   * The fixed formats of each thread, by the number of decimals
+   */
+  private static final ThreadLocal<DecimalFormat[]> FIXED_FORMATS = new ThreadLocal<DecimalFormat[]>() {
+    @Override
+    protected DecimalFormat[] initialValue() {
+      return new DecimalFormat[FIXED_SCALES.length];
+    }
+  };
+  
+  /**
+   * For the values {@link #appendFixed(StringBuilder, double, int)} does not round itself
+   */
+  private static DecimalFormat fixedFormat(int decimals) {
+    DecimalFormat[] formats = FIXED_FORMATS.get();
+    if ((decimals >= 0) && (decimals < formats.length) && (formats[decimals] != null))
+      return formats[decimals];
+    StringBuilder pattern = new StringBuilder("0");
+    if (decimals > 0)
+      pattern.append('.');
+    for (int i=0; i<decimals; i++)
+      pattern.append('0');
+    DecimalFormat result = new DecimalFormat(pattern.toString(), DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+    if ((decimals >= 0) && (decimals < formats.length))
+      formats[decimals] = result;
+    return result;
   }
   
   /**
@@ -463,9 +625,4 @@ public class RawFmtUtils {
       minute = periodStartMinInDay % 60;
     }
   }
-  
-  static {
-    df = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-    df.setMaximumFractionDigits(340); //340 = DecimalFormat.DOUBLE_FRACTION_DIGITS
-  }
 }
@@ -19,24 +19,24 @@
 package geocounts.traffic.formats;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents the data in a GEOCOUNTS file.
  * All data is stored as metric, but can be encoded and decoded as US Customary.
- *
+ * @see RawTrafficDataSink
  */
-public class RawTrafficData {
+public class RawTrafficData implements RawTrafficDataSink {
   /**
    * The header record. This is never null
    */
   public final RawTrafficDataHeader header;
   
-  private final HeaderChannelFilter headerChannelFilter;
-  
   /**
    * {@link VehicleTallyRec Tally} records
    */
@@ -52,21 +52,104 @@ public class RawTrafficData {
    */
   private final List<MonitoringEventRec> monitoringevents = new ArrayList<MonitoringEventRec>();
   
+  /**
+   * Finds tallies by their {@link VehicleTallyRec#getTimeActualStart() actual start}
+   */
+  private final TimeIndex<VehicleTallyRec> talliesByTime = new TimeIndex<VehicleTallyRec>(tallies) {
+    @Override
+    long timeOf(VehicleTallyRec rec) {
+      return rec.getTimeActualStart();
+    }
+  };
+  
+  private final TimeIndex<VehicleRec> observationsByTime = new TimeIndex<VehicleRec>(observations) {
+    @Override
+    long timeOf(VehicleRec rec) {
+      return rec.getTime();
+    }
+  };
+  
   public RawTrafficData() {
     this(new RawTrafficDataHeader());
   }
   
   public RawTrafficData(RawTrafficDataHeader header) {
     this.header = header;
-    this.headerChannelFilter = new HeaderChannelFilter(this.header);
+  }
+  
+  @Override
+  public RawTrafficDataHeader getHeader() {
+    return header;
+  }
+  
+  @Override
+  public void onHeaderComplete() {
   }
   
   public void clearTallies() {
     tallies.clear();
+    talliesByTime.invalidate();
   }
   
+  /**
+   * The tallies are found by identity, in one pass
+   * @param t
+   */
   public void removeTallies(Collection<VehicleTallyRec> t) {
-    tallies.removeAll(t);
+    removeTallies(TrafficElementFilters.<VehicleTallyRec>in(t), null);
+  }
+  
+  /**
+   * Removes tallies in one pass, keeping the order of the others
+   * @param filter Includes the tallies to remove
+   * @param removed If not null, the removed tallies are added to this in order
+   * @return The number of tallies removed
+   * @see TrafficElementFilters
+   */
+  public int removeTallies(TrafficElementFilter<? super VehicleTallyRec> filter, List<VehicleTallyRec> removed) {
+    int result = compact(tallies, filter, true, removed);
+    if (result > 0)
+      talliesByTime.invalidate();
+    return result;
+  }
+  
+  /**
+   * Removes the tallies the filter does not include, in one pass
+   * @param filter Includes the tallies to keep
+   * @return The number of tallies removed
+   */
+  public int retainTallies(TrafficElementFilter<? super VehicleTallyRec> filter) {
+    int result = compact(tallies, filter, false, null);
+    if (result > 0)
+      talliesByTime.invalidate();
+    return result;
+  }
+  
+  /**
+   * Moves the records that are kept to the front of the list, then removes the end of the list
+   * @param list
+   * @param filter
+   * @param remove If true, remove the records the filter includes. Otherwise remove the others
+   * @param removed If not null, the removed records are added to this
+   * @return The number of records removed
+   */
+  private static <T extends RawTrafficDataTrafficElement> int compact(List<T> list, TrafficElementFilter<? super T> filter, boolean remove, List<T> removed) {
+    int n = list.size();
+    int kept = 0;
+    for (int i=0; i<n; i++) {
+      T rec = list.get(i);
+      if (filter.include(rec) == remove) {
+        if (removed != null)
+          removed.add(rec);
+      } else {
+        if (kept != i)
+          list.set(kept, rec);
+        kept++;
+      }
+    }
+    if (kept < n)
+      list.subList(kept, n).clear();
+    return n - kept;
   }
   
   /**
@@ -80,7 +163,8 @@ public class RawTrafficData {
   /**
    * Get tallies for the given channel ID
    * @param channelID
-   * @return Iterable of {@link VehicleTallyRec}
+   * @return A new list of {@link VehicleTallyRec}, in the order of {@link #tallies()}
+   * @see #tallies(int, long, long)
    */
   public Iterable<VehicleTallyRec> tallies(int channelID) {
     ArrayList<VehicleTallyRec> result = new ArrayList<VehicleTallyRec>();
@@ -90,6 +174,57 @@ public class RawTrafficData {
     return result;
   }
   
+  /**
+   * 
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return The tallies of all channels with an {@link VehicleTallyRec#getTimeActualStart() actual start} in the time range, sorted by time.
+   * This is a view that cannot be changed, and is valid until tallies are added or removed
+   * @see #reindex()
+   */
+  public List<VehicleTallyRec> tallies(long fromTime, long toTime) {
+    return talliesByTime.get(fromTime, toTime);
+  }
+  
+  /**
+   * 
+   * @param channelID
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return The tallies of the channel with an {@link VehicleTallyRec#getTimeActualStart() actual start} in the time range, sorted by time.
+   * This is a view that cannot be changed, and is valid until tallies are added or removed
+   * @see #reindex()
+   */
+  public List<VehicleTallyRec> tallies(int channelID, long fromTime, long toTime) {
+    return talliesByTime.get(channelID, fromTime, toTime);
+  }
+  
+  /**
+   * 
+   * @param time
+   * @return The tallies of all channels from their {@link VehicleTallyRec#getTimeActualStart() actual start} up to, but not including, their {@link VehicleTallyRec#getTimeActualEnd() actual end}
+   */
+  public List<VehicleTallyRec> talliesContaining(long time) {
+    return talliesContaining(-1, time);
+  }
+  
+  /**
+   * 
+   * @param channelID The channel, or -1 for all channels
+   * @param time
+   * @return The tallies of the channel from their {@link VehicleTallyRec#getTimeActualStart() actual start} up to, but not including, their {@link VehicleTallyRec#getTimeActualEnd() actual end}.
+   * There is normally one tally for each channel
+   */
+  public List<VehicleTallyRec> talliesContaining(int channelID, final long time) {
+    // all tallies have the same duration, so the ones ending after the time are the last ones starting at or before it
+    return talliesByTime.getEndingWith(channelID, time, new TimeIndex.RecordTest<VehicleTallyRec>() {
+      @Override
+      public boolean accept(VehicleTallyRec rec) {
+        return rec.getTimeActualEnd() > time;
+      }
+    });
+  }
+  
   public VehicleTallyRec getTally(int index) {
     return tallies.get(index);
   }
@@ -141,31 +276,58 @@ public class RawTrafficData {
   
   /**
    * Compute tallies into periods. Each period object contains all the tallies in that period.
+   * If the tallies are {@link #sortTallies() sorted} the periods are made in one pass, without a map or a sort.
    * @return List of {@link TalliesInPeriod}, sorted in time order
    */
   public List<TalliesInPeriod> toTalliesByPeriod() {
+    int[] channelIDs = TalliesInPeriod.getChannelIDs(header.S);
+    List<TalliesInPeriod> result = toSortedTalliesByPeriod(channelIDs);
+    if (result != null)
+      return result;
+    
     HashMap<Long, TalliesInPeriod> periods = new HashMap<Long, TalliesInPeriod>();
     TalliesInPeriod tfh = null;
 
     for (VehicleTallyRec tally: tallies) {
       tfh = periods.get(tally.getTimeActualStart());
       if (tfh == null) {
-        tfh = new TalliesInPeriod(tally);
+        tfh = new TalliesInPeriod(tally, channelIDs);
         periods.put(tfh.getTallyActualStart(), tfh);
       } else {
         if (!tfh.add(tally)) {
-          tfh = new TalliesInPeriod(tally);
+          tfh = new TalliesInPeriod(tally, channelIDs);
           periods.put(tfh.getTallyActualStart(), tfh);
         }
       }
     }
     
-    ArrayList<TalliesInPeriod> result = new ArrayList<TalliesInPeriod>();
-    result.addAll(periods.values());
+    result = new ArrayList<TalliesInPeriod>(periods.values());
     Collections.sort(result);
     return result;
   }
   
+  /**
+   * Walks the tallies once, starting a new period each time the actual start changes
+   * @param channelIDs The station's channel IDs, shared by the periods
+   * @return The periods in time order, or null if the tallies are not in time order
+   */
+  private List<TalliesInPeriod> toSortedTalliesByPeriod(int[] channelIDs) {
+    ArrayList<TalliesInPeriod> result = new ArrayList<TalliesInPeriod>();
+    TalliesInPeriod tfh = null;
+    long start = Long.MIN_VALUE;
+    for (VehicleTallyRec tally: tallies) {
+      long tallyStart = tally.getTimeActualStart();
+      if (tallyStart < start)
+        return null;
+      if ((tfh == null) || (tallyStart != start) || !tfh.add(tally)) {
+        tfh = new TalliesInPeriod(tally, channelIDs);
+        result.add(tfh);
+        start = tallyStart;
+      }
+    }
+    return result;
+  }
+  
   public void changeChannel(int fromChannel, int toChannel) throws Exception {
     if (fromChannel == toChannel)
       return;
@@ -182,6 +344,7 @@ public class RawTrafficData {
     // change vehicles
     ChangeVehicleChannels veh = new ChangeVehicleChannels(this);
     veh.changeChannel(fromChannel, toChannel);
+    reindex();
   }
   
   /**
@@ -189,9 +352,11 @@ public class RawTrafficData {
    * @param rec
    * @return Whether the tally was added
    */
+  @Override
   public boolean addTally(VehicleTallyRec rec) {
-    if (headerChannelFilter.include(rec.channelID)) {
+    if (header.acceptTally(rec)) {
       tallies.add(rec);
+      talliesByTime.add(rec);
       return true;
     }
     return false;
@@ -208,35 +373,106 @@ public class RawTrafficData {
   
   public void clearObservations() {
     observations.clear();
+    observationsByTime.invalidate();
   }
   
   public void addAll(List<VehicleRec> obs) {
     observations.addAll(obs);
+    for (VehicleRec veh: obs)
+      observationsByTime.add(veh);
   }
   
+  /**
+   * The observations are found by identity, in one pass
+   * @param obs
+   */
   public void removeAll(Collection<VehicleRec> obs) {
-    observations.removeAll(obs);
+    removeObservations(TrafficElementFilters.<VehicleRec>in(obs), null);
+  }
+  
+  /**
+   * Removes observations in one pass, keeping the order of the others
+   * @param filter Includes the observations to remove
+   * @param removed If not null, the removed observations are added to this in order
+   * @return The number of observations removed
+   * @see TrafficElementFilters
+   */
+  public int removeObservations(TrafficElementFilter<? super VehicleRec> filter, List<VehicleRec> removed) {
+    int result = compact(observations, filter, true, removed);
+    if (result > 0)
+      observationsByTime.invalidate();
+    return result;
+  }
+  
+  /**
+   * Removes the observations the filter does not include, in one pass
+   * @param filter Includes the observations to keep
+   * @return The number of observations removed
+   */
+  public int retainObservations(TrafficElementFilter<? super VehicleRec> filter) {
+    int result = compact(observations, filter, false, null);
+    if (result > 0)
+      observationsByTime.invalidate();
+    return result;
+  }
+  
+  /**
+   * 
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return The observations of all channels in the time range, sorted by time.
+   * This is a view that cannot be changed, and is valid until observations are added or removed
+   * @see #reindex()
+   */
+  public List<VehicleRec> observations(long fromTime, long toTime) {
+    return observationsByTime.get(fromTime, toTime);
+  }
+  
+  /**
+   * For example the observations of channel 3 between 07:00 and 09:00
+   * @param channelID
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return The observations of the channel in the time range, sorted by time.
+   * This is a view that cannot be changed, and is valid until observations are added or removed
+   * @see #reindex()
+   */
+  public List<VehicleRec> observations(int channelID, long fromTime, long toTime) {
+    return observationsByTime.get(channelID, fromTime, toTime);
   }
   
   /**
-   * Sort observations by time
+   * The time queries keep an index that is updated as records are added and removed.
+   * Call this after changing the time or channel of records that were already added, or the {@link TallyRecordsDef#TD tally duration}
+   * @see #observations(int, long, long)
+   * @see #tallies(int, long, long)
+   */
+  public void reindex() {
+    talliesByTime.invalidate();
+    observationsByTime.invalidate();
+  }
+  
+  /**
+   * Sort observations by time. Observations that are already sorted are not changed
+   * @see TrafficElementSorter
    */
   public void sortObservations() {
-    Collections.sort(this.observations);
+    TrafficElementSorter.sortObservations(this.observations);
   }
   
   /**
-   * Sort {@link VehicleTallyRec tallies} by time
+   * Sort {@link VehicleTallyRec tallies} by time. Tallies that are already sorted are not changed
+   * @see TrafficElementSorter
    */
   public void sortTallies() {
-    Collections.sort(this.tallies);
+    TrafficElementSorter.sortTallies(this.tallies);
   }
   
   /**
    * Sort monitoring events by time
    */
   public void sortMonitoringEvents() {
-    Collections.sort(this.monitoringevents);
+    TrafficElementSorter.sortMonitoringEvents(this.monitoringevents);
   }
   
   /**
@@ -284,19 +520,17 @@ public class RawTrafficData {
    * @param obs Observed vehicle record
    * @return True if the vehicle was added. False if not.
    */
+  @Override
   public boolean addObservation(VehicleRec obs) {
-    int computedChannel = header.S.computeChannel(obs.channelID, obs.speedKph >= 0);
-    if (headerChannelFilter.include(computedChannel)) {
-      if (computedChannel != obs.channelID) {
-        obs.channelID = computedChannel;
-        obs.speedKph = -obs.speedKph;
-      }
+    if (header.acceptObservation(obs)) {
       observations.add(obs);
+      observationsByTime.add(obs);
       return true;
     }
     return false;
   }
 
+  @Override
   public boolean addMonitoringEvent(MonitoringEventRec e) {
     return monitoringevents.add(e);
   }
@@ -309,6 +543,16 @@ public class RawTrafficData {
     return monitoringevents.size();
   }
   
+  /**
+   * Removes monitoring events in one pass, keeping the order of the others
+   * @param filter Includes the events to remove
+   * @param removed If not null, the removed events are added to this in order
+   * @return The number of events removed
+   */
+  public int removeMonitoringEvents(TrafficElementFilter<? super MonitoringEventRec> filter, List<MonitoringEventRec> removed) {
+    return compact(monitoringevents, filter, true, removed);
+  }
+  
   public void clearMonitoringEvents() {
     monitoringevents.clear();
   }
@@ -351,22 +595,46 @@ public class RawTrafficData {
    * @see RawTrafficData#numberOfVehiclesByChannel()
    */
   public java.util.Map<Integer, Integer> getTalliedMotorizedVehsByChannel() {
-    List<ChannelData> channels = header.S.getAllChannels();
-    java.util.HashMap<Integer, int[]> counts = new java.util.HashMap<Integer, int[]>();
-    for (ChannelData cd: channels) {
-      counts.put(cd.getChannelID(), new int[1]);
-    }
-
-    for (VehicleTallyRec tally: tallies) {
-      int[] count = counts.get(tally.channelID);
-      Number n = TrafficMonitoringTallyFieldNamespace.motorized.get(tally, null);
-      if (n != null)
-        count[0] += n.intValue();
-    }
-
+    TalliedValues sums = getTalliedValues(new TallyCountField[]{TrafficMonitoringTallyFieldNamespace.motorized}, null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+    int[] channelIDs = sums.getChannelIDs();
+    double[] counts = sums.getByChannel(0);
     java.util.HashMap<Integer, Integer> result = new java.util.HashMap<Integer, Integer>();
-    for (java.util.Map.Entry<Integer, int[]> e: counts.entrySet())
-      result.put(e.getKey(), e.getValue()[0]);
+    for (int c=0; c<channelIDs.length; c++)
+      result.put(channelIDs[c], (int)counts[c]);
+    return result;
+  }
+  
+  /**
+   * Sums several fields in one pass over the tallies, on the calling thread
+   * @see #getTalliedValues(TallyCountField[], UnitsUsed, ChannelIDFilter, long, long, ForkJoinPool)
+   */
+  public TalliedValues getTalliedValues(TallyCountField[] fields, UnitsUsed units, ChannelIDFilter chfilter, long fromTime, long toTime) {
+    return getTalliedValues(fields, units, chfilter, fromTime, toTime, null);
+  }
+  
+  /**
+   * Sums several fields in one pass over the tallies, for each of the header's channels
+   * @param fields The {@link TallyCountField fields to sum}
+   * @param units The {@link UnitsUsed units}
+   * @param chfilter The channels to sum, or null for all the header's channels
+   * @param fromTime Inclusive. Use Long.MIN_VALUE and Long.MAX_VALUE to sum all tallies
+   * @param toTime Exclusive
+   * @param pool If not null, large sets of tallies are summed in tasks on this pool
+   * @return The sums of each field for each channel, of the tallies with an {@link VehicleTallyRec#getTimeActualStart() actual start} in the time range
+   */
+  public TalliedValues getTalliedValues(TallyCountField[] fields, UnitsUsed units, ChannelIDFilter chfilter, long fromTime, long toTime, ForkJoinPool pool) {
+    List<ChannelData> channels = header.S.getAllChannels();
+    int[] channelIDs = new int[channels.size()];
+    int n = 0;
+    for (ChannelData cd: channels)
+      if ((chfilter == null) || chfilter.include(cd.getChannelID()))
+        channelIDs[n++] = cd.getChannelID();
+    
+    TalliedValues result = new TalliedValues(fields, units, Arrays.copyOf(channelIDs, n));
+    if ((fromTime == Long.MIN_VALUE) && (toTime == Long.MAX_VALUE))
+      result.add(tallies, pool);
+    else
+      result.add(tallies(fromTime, toTime), pool);
     return result;
   }
   
@@ -404,8 +672,11 @@ public class RawTrafficData {
   public Number getTalliedValue(TallyCountField field, UnitsUsed units, ChannelIDFilter chfilter) {
     double result = 0;
     for (VehicleTallyRec tally: tallies) {
-      if (chfilter.include(tally.channelID))
-        result += field.get(tally, units).doubleValue();
+      if (chfilter.include(tally.channelID)) {
+        double v = field.getDouble(tally, units);
+        if (!Double.isNaN(v))
+          result += v;
+      }
     }
     
     return result;
@@ -432,24 +703,6 @@ public class RawTrafficData {
     return result.toString();
   }
   
-  /**
-   * Used to exclude channels that are not in the header
-   * @author scropley
-   *
-   */
-  private class HeaderChannelFilter implements ChannelIDFilter {
-    private final RawTrafficDataHeader h;
-    private HeaderChannelFilter(RawTrafficDataHeader _h) {
-      h = _h;
-    }
-    
-    @Override
-    public boolean include(int channelID) {
-      return h.S.hasChannel(channelID);
-    }
-    
-  }
-  
   /**
    * Used to include all channels
    * @author scropley
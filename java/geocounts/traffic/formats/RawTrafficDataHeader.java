@@ -96,6 +96,47 @@ public class RawTrafficDataHeader {
     return result;
   }
   
+  /**
+   * Tests whether a {@link VehicleTallyRec tally} belongs to a channel in this header
+   * @param rec
+   * @return True if the tally's channel ID is in the header
+   * @see RawTrafficData#addTally(VehicleTallyRec)
+   */
+  public boolean acceptTally(VehicleTallyRec rec) {
+    return S.hasChannel(rec.channelID);
+  }
+  
+  /**
+   * Applies the channel definitions to an {@link VehicleRec observation}.
+   * If a header {@link ChannelContraFlowDef contra-flow record} determines the vehicle should have its channel reassigned,
+   * this changes the vehicle's channel ID and reverses the vehicle's speed.
+   * @param obs Observed vehicle record
+   * @return True if the vehicle's computed channel ID is in the header
+   * @see RawTrafficData#addObservation(VehicleRec)
+   */
+  public boolean acceptObservation(VehicleRec obs) {
+    int computedChannel = computeObservationChannel(obs.channelID, obs.speedKph);
+    if (computedChannel < 0)
+      return false;
+    if (computedChannel != obs.channelID) {
+      obs.channelID = computedChannel;
+      obs.speedKph = -obs.speedKph;
+    }
+    return true;
+  }
+  
+  /**
+   * 
+   * @param channelID The channel of an observation
+   * @param speedKph The speed of the observation
+   * @return The computed channel ID, or -1 if it is not in the header. If it is not channelID the speed must be reversed
+   * @see #acceptObservation(VehicleRec)
+   */
+  int computeObservationChannel(int channelID, double speedKph) {
+    int computedChannel = S.computeChannel(channelID, speedKph >= 0);
+    return S.hasChannel(computedChannel) ? computedChannel : -1;
+  }
+  
   /**
    * Tally record field definitions
    * @see TallyRecordsDef
@@ -139,28 +180,24 @@ public class RawTrafficDataHeader {
     }
   }
 
-  private java.text.DateFormat tallyDF = null;
-  
   /**
-   * yyyy/MM/dd,HH
+   * yyyy/MM/dd,HH<br />
+   * Each call returns a new instance, so several threads may read this header at once, and changes to the format are not seen by other callers
    * @return The tally date format
+   * @see RawFmtDateCodec
    */
   public java.text.DateFormat getTallyDateFormat() {
-    if (tallyDF == null)
-      tallyDF = RawFmtUtils.sdfHeaderT();
-    return tallyDF;
+    return (java.text.DateFormat)RawFmtUtils.sdfHeaderTOfThread().clone();
   }
 
-  private java.text.DateFormat obsDF = null;
-  
   /**
-   * yyyy/MM/dd,HH:mm:ss.SSS
+   * yyyy/MM/dd,HH:mm:ss.SSS<br />
+   * Each call returns a new instance, so several threads may read this header at once, and changes to the format are not seen by other callers
    * @return The vehicle record date format
+   * @see RawFmtDateCodec
    */
   public java.text.DateFormat getObservationDateFormat() {
-    if (obsDF == null)
-      obsDF = RawFmtUtils.sdfHeaderV();
-    return obsDF;
+    return (java.text.DateFormat)RawFmtUtils.sdfHeaderVOfThread().clone();
   }
 
   public int compareTo(long time) {
@@ -174,17 +211,24 @@ public class RawTrafficDataHeader {
    */
   public RawTrafficDataHeader copy() throws Exception {
     RawTrafficDataHeader result = new RawTrafficDataHeader();
-
-    result.GK.copyFrom(this.GK);
-    result.F.copyFrom(this.F);
-    result.S.copyFrom(this.S);
-    result.T.copyFrom(this.T);
-    result.VV.copyFrom(this.VV);
-    result.VA.copyFrom(this.VA);
-
+    result.copyFrom(this);
     return result;
   }
   
+  /**
+   * Sets these sub objects from another header: GK, F, S, T, VV and VA
+   * @param other
+   * @throws Exception
+   */
+  public void copyFrom(RawTrafficDataHeader other) throws Exception {
+    this.GK.copyFrom(other.GK);
+    this.F.copyFrom(other.F);
+    this.S.copyFrom(other.S);
+    this.T.copyFrom(other.T);
+    this.VV.copyFrom(other.VV);
+    this.VA.copyFrom(other.VA);
+  }
+  
   /**
    * Merges T, F and S record
    * @param other
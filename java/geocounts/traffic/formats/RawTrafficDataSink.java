@@ -0,0 +1,62 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+/**
+ * Receives the contents of a GEOCOUNTS file as it is decoded.
+ * Header records are decoded into {@link #getHeader()}, then each body record is passed to this object as soon as it is decoded.
+ * {@link RawTrafficData} is the implementation that keeps every record.
+ * Other implementations can aggregate, count, filter or re-encode records without keeping them.
+ * @see RawTrafficData
+ */
+public interface RawTrafficDataSink {
+
+  /**
+   *
+   * @return The header into which header records are decoded. This is never null
+   */
+  public RawTrafficDataHeader getHeader();
+
+  /**
+   * Called once, after the last header record and before the first body record
+   * @throws Exception
+   */
+  public void onHeaderComplete() throws Exception;
+
+  /**
+   * @param rec A decoded {@link VehicleTallyRec tally}
+   * @return Whether the tally was accepted
+   * @throws Exception
+   */
+  public boolean addTally(VehicleTallyRec rec) throws Exception;
+
+  /**
+   * @param obs A decoded {@link VehicleRec observation}
+   * @return Whether the observation was accepted
+   * @throws Exception
+   */
+  public boolean addObservation(VehicleRec obs) throws Exception;
+
+  /**
+   * @param e A decoded {@link MonitoringEventRec monitoring event}
+   * @return Whether the event was accepted
+   * @throws Exception
+   */
+  public boolean addMonitoringEvent(MonitoringEventRec e) throws Exception;
+}
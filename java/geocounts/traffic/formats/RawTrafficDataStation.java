@@ -345,11 +345,9 @@ public class RawTrafficDataStation {
    * @return {@link ChannelData} or null if the channel does not exist
    */
   public ChannelData getChannel(int channelID) {
-    try {
-      return SC[channelID];
-    } catch (ArrayIndexOutOfBoundsException aioobe) {
+    if ((channelID < 0) || (channelID >= SC.length))
       return null;
-    }
+    return SC[channelID];
   }
   
   /**
@@ -371,7 +369,7 @@ public class RawTrafficDataStation {
   }
 
   public boolean hasChannel(int channelID) {
-    return SC[channelID] != null;
+    return getChannel(channelID) != null;
   }
 
   public List<ChannelData> getAllChannels() {
@@ -0,0 +1,195 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.math.RoundingMode;
+import java.text.AttributedCharacterIterator;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.text.ParsePosition;
+import java.util.Currency;
+
+/**
+ * A DecimalFormat that several threads can share: formatting and parsing are synchronized, and it cannot be changed after it is constructed.
+ * format(Object) is final in DecimalFormat. It passes numbers to the synchronized methods, except BigDecimal and BigInteger, which DecimalFormat formats under its own lock.
+ * {@link #clone()} returns an ordinary DecimalFormat that can be changed
+ * @see RawFmtUtils#df3
+ */
+final class SharedDecimalFormat extends DecimalFormat {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Set when constructed. The superclass calls the setters while it is constructed
+   */
+  private boolean frozen;
+
+  SharedDecimalFormat(String pattern) {
+    super(pattern, DecimalFormatSymbols.getInstance());
+    frozen = true;
+    // the first format decides whether DecimalFormat's fast path applies, which changes its fields
+    format(0.0);
+  }
+
+  private void assertNotFrozen() {
+    if (frozen)
+      throw new UnsupportedOperationException("This format is shared and cannot be changed. Change a clone()");
+  }
+
+  @Override
+  public synchronized StringBuffer format(double number, StringBuffer result, FieldPosition fieldPosition) {
+    return super.format(number, result, fieldPosition);
+  }
+
+  @Override
+  public synchronized StringBuffer format(long number, StringBuffer result, FieldPosition fieldPosition) {
+    return super.format(number, result, fieldPosition);
+  }
+
+  @Override
+  public synchronized AttributedCharacterIterator formatToCharacterIterator(Object obj) {
+    return super.formatToCharacterIterator(obj);
+  }
+
+  @Override
+  public synchronized Number parse(String text, ParsePosition pos) {
+    return super.parse(text, pos);
+  }
+
+  @Override
+  public Object clone() {
+    DecimalFormat result = new DecimalFormat(toPattern(), getDecimalFormatSymbols());
+    result.setRoundingMode(getRoundingMode());
+    return result;
+  }
+
+  @Override
+  public void applyPattern(String pattern) {
+    assertNotFrozen();
+    super.applyPattern(pattern);
+  }
+
+  @Override
+  public void applyLocalizedPattern(String pattern) {
+    assertNotFrozen();
+    super.applyLocalizedPattern(pattern);
+  }
+
+  @Override
+  public void setDecimalFormatSymbols(DecimalFormatSymbols newSymbols) {
+    assertNotFrozen();
+    super.setDecimalFormatSymbols(newSymbols);
+  }
+
+  @Override
+  public void setPositivePrefix(String newValue) {
+    assertNotFrozen();
+    super.setPositivePrefix(newValue);
+  }
+
+  @Override
+  public void setNegativePrefix(String newValue) {
+    assertNotFrozen();
+    super.setNegativePrefix(newValue);
+  }
+
+  @Override
+  public void setPositiveSuffix(String newValue) {
+    assertNotFrozen();
+    super.setPositiveSuffix(newValue);
+  }
+
+  @Override
+  public void setNegativeSuffix(String newValue) {
+    assertNotFrozen();
+    super.setNegativeSuffix(newValue);
+  }
+
+  @Override
+  public void setMultiplier(int newValue) {
+    assertNotFrozen();
+    super.setMultiplier(newValue);
+  }
+
+  @Override
+  public void setGroupingSize(int newValue) {
+    assertNotFrozen();
+    super.setGroupingSize(newValue);
+  }
+
+  @Override
+  public void setGroupingUsed(boolean newValue) {
+    assertNotFrozen();
+    super.setGroupingUsed(newValue);
+  }
+
+  @Override
+  public void setDecimalSeparatorAlwaysShown(boolean newValue) {
+    assertNotFrozen();
+    super.setDecimalSeparatorAlwaysShown(newValue);
+  }
+
+  @Override
+  public void setParseBigDecimal(boolean newValue) {
+    assertNotFrozen();
+    super.setParseBigDecimal(newValue);
+  }
+
+  @Override
+  public void setParseIntegerOnly(boolean value) {
+    assertNotFrozen();
+    super.setParseIntegerOnly(value);
+  }
+
+  @Override
+  public void setMaximumIntegerDigits(int newValue) {
+    assertNotFrozen();
+    super.setMaximumIntegerDigits(newValue);
+  }
+
+  @Override
+  public void setMinimumIntegerDigits(int newValue) {
+    assertNotFrozen();
+    super.setMinimumIntegerDigits(newValue);
+  }
+
+  @Override
+  public void setMaximumFractionDigits(int newValue) {
+    assertNotFrozen();
+    super.setMaximumFractionDigits(newValue);
+  }
+
+  @Override
+  public void setMinimumFractionDigits(int newValue) {
+    assertNotFrozen();
+    super.setMinimumFractionDigits(newValue);
+  }
+
+  @Override
+  public void setCurrency(Currency currency) {
+    assertNotFrozen();
+    super.setCurrency(currency);
+  }
+
+  @Override
+  public void setRoundingMode(RoundingMode roundingMode) {
+    assertNotFrozen();
+    super.setRoundingMode(roundingMode);
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The sums of several {@link TallyCountField fields} for each channel, made in one pass over the tallies.
+ * The sums are kept in one array, a row of channels for each field.
+ * <pre>
+ * TallyCountField[] fields = {TrafficMonitoringTallyFieldNamespace.motorized, TrafficMonitoringTallyFieldNamespace.axles};
+ * TalliedValues sums = data.getTalliedValues(fields, null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+ * double axles = sums.getTotal(1);
+ * </pre>
+ * @see RawTrafficData#getTalliedValues(TallyCountField[], UnitsUsed, ChannelIDFilter, long, long, ForkJoinPool)
+ */
+public final class TalliedValues {
+  /**
+   * Up to this many tallies are summed in one task
+   */
+  static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+  private final TallyCountField[] fields;
+  private final UnitsUsed units;
+  private final int[] channelIDs;
+
+  /**
+   * The column of each channel ID, or -1 if the channel is not summed
+   */
+  private final int[] columnByChannelID;
+
+  private final double[] sums;
+  private int numberOfTallies;
+
+  /**
+   *
+   * @param fields
+   * @param units
+   * @param channelIDs The channels to sum, in column order
+   */
+  TalliedValues(TallyCountField[] fields, UnitsUsed units, int[] channelIDs) {
+    this.fields = fields.clone();
+    this.units = units;
+    this.channelIDs = channelIDs.clone();
+    this.columnByChannelID = new int[ChannelData.MAX_CHANNELID + 1];
+    Arrays.fill(columnByChannelID, -1);
+    for (int c=0; c<channelIDs.length; c++)
+      columnByChannelID[channelIDs[c]] = c;
+    this.sums = new double[fields.length * channelIDs.length];
+  }
+
+  /**
+   * Sums the tallies of the summed channels
+   * @param tallies
+   * @param pool If not null, the tallies are split into tasks on the pool
+   */
+  void add(List<VehicleTallyRec> tallies, ForkJoinPool pool) {
+    if ((pool == null) || (tallies.size() <= SEQUENTIAL_THRESHOLD)) {
+      numberOfTallies += add(tallies, 0, tallies.size(), sums);
+      return;
+    }
+    SumTask task = new SumTask(tallies, 0, tallies.size());
+    pool.invoke(task);
+    double[] result = task.getRawResult();
+    for (int i=0; i<sums.length; i++)
+      sums[i] += result[i];
+    numberOfTallies += task.count;
+  }
+
+  /**
+   *
+   * @return The number of tallies summed
+   */
+  private int add(List<VehicleTallyRec> tallies, int from, int to, double[] result) {
+    int channels = channelIDs.length;
+    int count = 0;
+    for (int i=from; i<to; i++) {
+      VehicleTallyRec tally = tallies.get(i);
+      int column = getColumn(tally.channelID);
+      if (column < 0)
+        continue;
+      for (int f=0; f<fields.length; f++) {
+        double v = fields[f].getDouble(tally, units);
+        if (!Double.isNaN(v))
+          result[f*channels + column] += v;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private int getColumn(int channelID) {
+    if ((channelID < 0) || (channelID >= columnByChannelID.length))
+      return -1;
+    return columnByChannelID[channelID];
+  }
+
+  /**
+   *
+   * @return The summed fields, in row order
+   */
+  public TallyCountField[] getFields() {
+    return fields.clone();
+  }
+
+  /**
+   *
+   * @return The summed channel IDs, in column order
+   */
+  public int[] getChannelIDs() {
+    return channelIDs.clone();
+  }
+
+  public int numberOfTallies() {
+    return numberOfTallies;
+  }
+
+  /**
+   *
+   * @param fieldIndex The index of the field in {@link #getFields()}
+   * @param channelID
+   * @return The sum of the field for the channel, or 0 if the channel was not summed
+   */
+  public double get(int fieldIndex, int channelID) {
+    int column = getColumn(channelID);
+    if (column < 0)
+      return 0;
+    return sums[fieldIndex*channelIDs.length + column];
+  }
+
+  /**
+   *
+   * @param field
+   * @param channelID
+   * @return The sum of the field for the channel, or 0 if the field or channel was not summed
+   */
+  public double get(TallyCountField field, int channelID) {
+    int f = indexOf(field);
+    if (f < 0)
+      return 0;
+    return get(f, channelID);
+  }
+
+  /**
+   *
+   * @param fieldIndex The index of the field in {@link #getFields()}
+   * @return The sums of the field, in the order of {@link #getChannelIDs()}
+   */
+  public double[] getByChannel(int fieldIndex) {
+    int channels = channelIDs.length;
+    return Arrays.copyOfRange(sums, fieldIndex*channels, (fieldIndex + 1)*channels);
+  }
+
+  /**
+   *
+   * @param fieldIndex The index of the field in {@link #getFields()}
+   * @return The sum of the field for all the summed channels
+   */
+  public double getTotal(int fieldIndex) {
+    int channels = channelIDs.length;
+    double result = 0;
+    for (int c=fieldIndex*channels; c<(fieldIndex + 1)*channels; c++)
+      result += sums[c];
+    return result;
+  }
+
+  /**
+   *
+   * @param field
+   * @return The sum of the field for all the summed channels, or 0 if the field was not summed
+   */
+  public double getTotal(TallyCountField field) {
+    int f = indexOf(field);
+    if (f < 0)
+      return 0;
+    return getTotal(f);
+  }
+
+  private int indexOf(TallyCountField field) {
+    for (int f=0; f<fields.length; f++)
+      if (fields[f] == field)
+        return f;
+    return -1;
+  }
+
+  /**
+   * Sums a range of tallies into its own array, splitting in two above {@link TalliedValues#SEQUENTIAL_THRESHOLD}
+   */
+  private class SumTask extends RecursiveTask<double[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<VehicleTallyRec> tallies;
+    private final int from;
+    private final int to;
+    int count;
+
+    SumTask(List<VehicleTallyRec> tallies, int from, int to) {
+      this.tallies = tallies;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected double[] compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        double[] result = new double[sums.length];
+        count = add(tallies, from, to, result);
+        return result;
+      }
+      int mid = (from + to) >>> 1;
+      SumTask first = new SumTask(tallies, from, mid);
+      SumTask second = new SumTask(tallies, mid, to);
+      invokeAll(first, second);
+      double[] result = first.getRawResult();
+      double[] other = second.getRawResult();
+      for (int i=0; i<result.length; i++)
+        result[i] += other[i];
+      count = first.count + second.count;
+      return result;
+    }
+  }
+}
@@ -18,38 +18,72 @@
  */
 package geocounts.traffic.formats;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * 
- * A set of {@link VehicleTallyRec tallies} for the same period
+ * A set of {@link VehicleTallyRec tallies} for the same period.
+ * The tallies are kept in an array with one position for each of the station's channels, and are iterated in channel order.
+ * A tally of a channel that is not in the station is kept after the station's channels.
  * @see RawTrafficData#toTalliesByPeriod()
  */
 public class TalliesInPeriod implements Iterable<VehicleTallyRec>, Comparable<TalliesInPeriod> {
-  private final HashMap<Integer, VehicleTallyRec> recsByChannelID = new HashMap<Integer, VehicleTallyRec>();
+  /**
+   * The channel ID of each position of {@link #recs}. Shared by the periods of the same station until a channel is added
+   */
+  private int[] channelIDs;
+  private VehicleTallyRec[] recs;
+  private int size;
   private final int hour;
   private final int periodID;
   private final long firstHourTime;
   private final long tallyActualStart;
   protected TalliesInPeriod(VehicleTallyRec first) {
-    this(first.getTime(), first.period, first.getTimeActualStart());
-    this.recsByChannelID.put(first.channelID, first);
+    this(first, new int[]{first.channelID});
   }
   
-  private TalliesInPeriod(long hourTime, int periodID, long tallyPeriodTm) {
+  /**
+   * 
+   * @param first
+   * @param channelIDs The station's channel IDs, see {@link #getChannelIDs(RawTrafficDataStation)}. The array is not modified
+   */
+  TalliesInPeriod(VehicleTallyRec first, int[] channelIDs) {
+    this(first.getTime(), first.period, first.getTimeActualStart(), channelIDs);
+    put(first);
+  }
+  
+  private TalliesInPeriod(long hourTime, int periodID, long tallyPeriodTm, int[] channelIDs) {
+    this.channelIDs = channelIDs;
+    this.recs = new VehicleTallyRec[channelIDs.length];
     this.hour = RawFmtUtils.getHour(hourTime);
     this.periodID = periodID;
     this.firstHourTime = hourTime;
     this.tallyActualStart = tallyPeriodTm;
   }
   
+  /**
+   * 
+   * @param S
+   * @return The IDs of the station's channels, in channel order
+   */
+  static int[] getChannelIDs(RawTrafficDataStation S) {
+    List<ChannelData> channels = S.getAllChannels();
+    int[] result = new int[channels.size()];
+    for (int i=0; i<result.length; i++)
+      result[i] = channels.get(i).getChannelID();
+    return result;
+  }
+  
   public static TalliesInPeriod create(TallyRecordsDef T, RawTrafficDataStation S, long hour, int periodID) throws Exception {
     TalliesInPeriod result = null;
-    for (ChannelData channel: S.getAllChannels()) {
-      VehicleTallyRec tally = T.create(channel.getChannelID(), periodID, hour);
+    int[] channelIDs = getChannelIDs(S);
+    for (int channelID: channelIDs) {
+      VehicleTallyRec tally = T.create(channelID, periodID, hour);
       if (result == null)
-        result = new TalliesInPeriod(tally);
+        result = new TalliesInPeriod(tally, channelIDs);
       else
         result.add(tally);
     }
@@ -57,7 +91,7 @@ public class TalliesInPeriod implements Iterable<VehicleTallyRec>, Comparable<Ta
   }
   
   public static TalliesInPeriod create(RawTrafficDataStation S, VehicleTallyRec first) {
-    TalliesInPeriod result = new TalliesInPeriod(first);
+    TalliesInPeriod result = new TalliesInPeriod(first, getChannelIDs(S));
     return result;
   }
   
@@ -79,15 +113,62 @@ public class TalliesInPeriod implements Iterable<VehicleTallyRec>, Comparable<Ta
   
   @Override
   public Iterator<VehicleTallyRec> iterator() {
-    return recsByChannelID.values().iterator();
+    return new Iterator<VehicleTallyRec>() {
+      private int next = advance(0);
+      private int last = -1;
+
+      private int advance(int from) {
+        while ((from < recs.length) && (recs[from] == null))
+          from++;
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < recs.length;
+      }
+
+      @Override
+      public VehicleTallyRec next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        last = next;
+        next = advance(next + 1);
+        return recs[last];
+      }
+
+      @Override
+      public void remove() {
+        if ((last < 0) || (recs[last] == null))
+          throw new IllegalStateException();
+        recs[last] = null;
+        size--;
+      }
+    };
   }
   
   public double sum(TallyCountField field, UnitsUsed units) {
     double result = 0;
-    for (VehicleTallyRec tally: recsByChannelID.values()) {
-      Number v = field.get(tally, units);
-      if (v != null)
-        result += v.doubleValue();
+    for (VehicleTallyRec tally: recs) {
+      if (tally == null)
+        continue;
+      double v = field.getDouble(tally, units);
+      if (!Double.isNaN(v))
+        result += v;
+    }
+    return result;
+  }
+  
+  /**
+   * 
+   * @param counter
+   * @return The sum of the {@link SpecialClassificationCounter#getCount(VehicleTallyRec) counts} of the tallies
+   */
+  public double sum(SpecialClassificationCounter counter) {
+    double result = 0;
+    for (VehicleTallyRec tally: recs) {
+      if (tally != null)
+        result += counter.getCount(tally);
     }
     return result;
   }
@@ -98,23 +179,53 @@ public class TalliesInPeriod implements Iterable<VehicleTallyRec>, Comparable<Ta
    * @return {@link VehicleTallyRec}
    */
   public VehicleTallyRec getTallyRec(int channelID) {
-    return recsByChannelID.get(channelID);
+    int position = positionOf(channelID);
+    return (position < 0) ? null : recs[position];
   }
   
   public boolean hasTallyRec(int channelID) {
-    return recsByChannelID.containsKey(channelID);
+    return getTallyRec(channelID) != null;
   }
   
   public boolean add(VehicleTallyRec vtr) {
     if ((vtr.getTime() == getTime()) && (vtr.period == this.periodID)) {
-      recsByChannelID.put(vtr.channelID, vtr);
+      put(vtr);
       return true;
     }
     return false;
   }
+  
+  /**
+   * Replaces any tally of the same channel
+   * @param vtr
+   */
+  private void put(VehicleTallyRec vtr) {
+    int position = positionOf(vtr.channelID);
+    if (position < 0) {
+      position = channelIDs.length;
+      channelIDs = Arrays.copyOf(channelIDs, position + 1);
+      channelIDs[position] = vtr.channelID;
+      recs = Arrays.copyOf(recs, position + 1);
+    }
+    if (recs[position] == null)
+      size++;
+    recs[position] = vtr;
+  }
+  
+  /**
+   * A station has few channels, so a scan is faster than a map
+   * @param channelID
+   * @return The position of the channel in {@link #recs}, or -1
+   */
+  private int positionOf(int channelID) {
+    for (int i=0; i<channelIDs.length; i++)
+      if (channelIDs[i] == channelID)
+        return i;
+    return -1;
+  }
 
   public int size() {
-    return recsByChannelID.size();
+    return size;
   }
 
   @Override
@@ -0,0 +1,369 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Counts {@link VehicleRec observations} into {@link VehicleTallyRec tallies} of the header's {@link TallyRecordsDef#TD duration}.
+ * Each observation is added in one pass to the tally of its channel and period:
+ * <ul>
+ * <li>{@link TallyRecordsDef#TC TC}, {@link TallyRecordsDef#TS TS}, {@link TallyRecordsDef#TL TL} bins, and speed by length if the {@link TallyRecordsDef#TO TO} has it</li>
+ * <li>{@link TrafficMonitoringTallyFieldNamespace#motorized motorized}, {@link TrafficMonitoringTallyFieldNamespace#axles axles},
+ * {@link TrafficMonitoringTallyFieldNamespace#speeds speeds} and {@link TrafficMonitoringTallyFieldNamespace#speeda speeda}</li>
+ * </ul>
+ * The bins are copied from the header when this is constructed. Speed bins are computed, and length bins are found with a binary search.
+ * Only vehicles of the motorized classes of a {@link WKClassificationSystemName well known} TC are added to the motorized fields.
+ * Each channel of the header has a tally for every period in the time range, with zero counts in periods without observations.
+ * <pre>
+ * RawTrafficData counts = new RawTrafficData(header);
+ * TallyAggregator.addTallies(vehicleData, counts);
+ * </pre>
+ * @see ClassifiedDef#getBin(VehicleRec)
+ */
+public class TallyAggregator {
+  private final TallyRecordsDef T;
+  private final long timezoneOffset;
+
+  private final int[] channelIDs;
+
+  private final boolean countVehType;
+  private final int maxVehType;
+
+  /**
+   * Whether each class is motorized, or null if every vehicle is
+   */
+  private final boolean[] motorizedVehType;
+
+  private final boolean countSpeed;
+  private final int speedBins;
+  private final double firstSpeedStepKph;
+  private final double otherSpeedStepKph;
+
+  private final boolean countLength;
+  private final double[] endBinsMeters;
+
+  private final boolean countSpeedByLength;
+
+  /**
+   *
+   * @param header The tallies are created for this header
+   * @throws Exception If the header does not specify a duration
+   */
+  public TallyAggregator(RawTrafficDataHeader header) throws Exception {
+    T = header.T;
+    if (!T.isRecording())
+      throw T.new NoTDException(this, T.TD);
+    timezoneOffset = header.S.SZ.getRecordedTimestampOffset();
+
+    List<ChannelData> channels = header.S.getAllChannels();
+    channelIDs = new int[channels.size()];
+    for (int i=0; i<channelIDs.length; i++)
+      channelIDs[i] = channels.get(i).getChannelID();
+
+    countVehType = T.TC.isRecording();
+    maxVehType = T.TC.getMaximumBin();
+    motorizedVehType = getMotorizedVehTypes(T.TC);
+
+    countSpeed = T.TS.isRecording();
+    speedBins = T.TS.numberOfBins;
+    firstSpeedStepKph = T.TS.getFirstBinStepKph();
+    otherSpeedStepKph = T.TS.getOtherBinStepKph();
+
+    countLength = T.TL.isRecording();
+    endBinsMeters = new double[T.TL.getMaximumBin()];
+    for (int i=0; i<endBinsMeters.length; i++)
+      endBinsMeters[i] = T.TL.getBinMaxMeters(i);
+
+    countSpeedByLength = T.TO.hasSpeedByLength();
+  }
+
+  /**
+   * The classes of the TC's {@link TruckClassCounter} are motorized. Classes the TC does not define are unclassified vehicles, which are motorized
+   * @param TC
+   * @return Whether each class is motorized, or null if the TC does not say which are
+   */
+  private static boolean[] getMotorizedVehTypes(ClassifiedVehTypeDef TC) {
+    if (!TC.isRecording() || (TC.WKID == null))
+      return null;
+    SpecialClassificationCounter counter = TC.WKID.getSpecialClassificationCounter();
+    if (!(counter instanceof TruckClassCounter))
+      return null;
+    TruckClassCounter classes = (TruckClassCounter)counter;
+    boolean[] result = new boolean[TC.getMaximumBin() + 1];
+    for (int vc=0; vc<result.length; vc++)
+      result[vc] = (vc < TC.getMinimumBin()) || classes.isTruck(vc) || classes.isCar(vc);
+    return result;
+  }
+
+  /**
+   * Counts observations on the calling thread. They do not need to be sorted.
+   * The tallies run from the period of the first observation to the period of the last
+   * @param observations
+   * @return The tallies, sorted by time
+   * @throws Exception
+   */
+  public List<VehicleTallyRec> aggregate(Iterable<? extends VehicleRec> observations) throws Exception {
+    return aggregate(observations, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Counts the observations in a time range on the calling thread. They do not need to be sorted
+   * @param observations
+   * @param fromTime Inclusive, or Long.MIN_VALUE to start with the period of the first observation
+   * @param toTime Exclusive, or Long.MAX_VALUE to end with the period of the last observation
+   * @return The tallies of every period in the range, sorted by time
+   * @throws Exception
+   */
+  public List<VehicleTallyRec> aggregate(Iterable<? extends VehicleRec> observations, long fromTime, long toTime) throws Exception {
+    HashMap<Integer, ChannelTallies> channels = new HashMap<Integer, ChannelTallies>();
+    for (int channelID: channelIDs)
+      channels.put(channelID, new ChannelTallies(channelID));
+    ChannelTallies last = null;
+    long first = Long.MAX_VALUE;
+    long latest = Long.MIN_VALUE;
+    for (VehicleRec veh: observations) {
+      long time = veh.getTime();
+      if ((time < fromTime) || (time >= toTime))
+        continue;
+      first = Math.min(first, time);
+      latest = Math.max(latest, time);
+      if ((last == null) || (last.channelID != veh.channelID)) {
+        last = channels.get(veh.channelID);
+        if (last == null) {
+          last = new ChannelTallies(veh.channelID);
+          channels.put(veh.channelID, last);
+        }
+      }
+      last.add(veh);
+    }
+    long from = fromTime != Long.MIN_VALUE ? fromTime : first;
+    long to = toTime != Long.MAX_VALUE ? toTime : (latest != Long.MIN_VALUE ? latest + 1 : latest);
+    ArrayList<VehicleTallyRec> result = new ArrayList<VehicleTallyRec>();
+    for (ChannelTallies ch: channels.values()) {
+      ch.fill(from, to);
+      result.addAll(ch.finish());
+    }
+    TrafficElementSorter.sortTallies(result);
+    return result;
+  }
+
+  /**
+   * Counts the observations of each channel in its own task.
+   * The tallies run from the period of the first observation to the period of the last
+   * @param data
+   * @param pool
+   * @return The tallies, sorted by time
+   * @throws Exception
+   */
+  public List<VehicleTallyRec> aggregateByChannel(RawTrafficData data, ForkJoinPool pool) throws Exception {
+    return aggregateByChannel(data, Long.MIN_VALUE, Long.MAX_VALUE, pool);
+  }
+
+  /**
+   * Counts the observations in a time range, each channel in its own task
+   * @param data
+   * @param fromTime Inclusive, or Long.MIN_VALUE to start with the period of the first observation
+   * @param toTime Exclusive, or Long.MAX_VALUE to end with the period of the last observation
+   * @param pool
+   * @return The tallies of every period in the range, sorted by time
+   * @throws Exception
+   */
+  public List<VehicleTallyRec> aggregateByChannel(RawTrafficData data, long fromTime, long toTime, ForkJoinPool pool) throws Exception {
+    List<VehicleRec> all = data.observations(fromTime, toTime);
+    long from = fromTime;
+    long to = toTime;
+    if (!all.isEmpty()) {
+      if (from == Long.MIN_VALUE)
+        from = all.get(0).getTime();
+      if (to == Long.MAX_VALUE)
+        to = all.get(all.size() - 1).getTime() + 1;
+    } else if ((from == Long.MIN_VALUE) || (to == Long.MAX_VALUE)) {
+      return new ArrayList<VehicleTallyRec>();
+    }
+    ArrayList<ForkJoinTask<List<VehicleTallyRec>>> tasks = new ArrayList<ForkJoinTask<List<VehicleTallyRec>>>();
+    for (ChannelData ch: data.header.S.getAllChannels()) {
+      List<VehicleRec> observations = data.observations(ch.getChannelID(), from, to);
+      tasks.add(pool.submit(new ChannelAggregator(ch.getChannelID(), observations, from, to)));
+    }
+    ArrayList<VehicleTallyRec> result = new ArrayList<VehicleTallyRec>();
+    try {
+      for (ForkJoinTask<List<VehicleTallyRec>> task: tasks)
+        result.addAll(task.get());
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception)
+        throw (Exception)cause;
+      throw ex;
+    } finally {
+      for (ForkJoinTask<List<VehicleTallyRec>> task: tasks)
+        task.cancel(false);
+    }
+    // each channel is already in time order, so this merges them
+    TrafficElementSorter.sortTallies(result);
+    return result;
+  }
+
+  /**
+   * Counts the observations of the source, one task for each channel on the common pool, and adds the tallies to the result
+   * @param source
+   * @param result Its header defines the tallies. This may be the source
+   * @return The number of tallies added
+   * @throws Exception If the result header does not specify a duration
+   */
+  public static int addTallies(RawTrafficData source, RawTrafficDataSink result) throws Exception {
+    TallyAggregator aggregator = new TallyAggregator(result.getHeader());
+    int count = 0;
+    for (VehicleTallyRec tally: aggregator.aggregateByChannel(source, ForkJoinPool.commonPool())) {
+      if (result.addTally(tally))
+        count++;
+    }
+    return count;
+  }
+
+  private class ChannelAggregator implements Callable<List<VehicleTallyRec>> {
+    private final int channelID;
+    private final List<VehicleRec> observations;
+    private final long fromTime;
+    private final long toTime;
+
+    ChannelAggregator(int channelID, List<VehicleRec> observations, long fromTime, long toTime) {
+      this.channelID = channelID;
+      this.observations = observations;
+      this.fromTime = fromTime;
+      this.toTime = toTime;
+    }
+
+    @Override
+    public List<VehicleTallyRec> call() throws Exception {
+      ChannelTallies tallies = new ChannelTallies(channelID);
+      for (VehicleRec veh: observations)
+        tallies.add(veh);
+      tallies.fill(fromTime, toTime);
+      return tallies.finish();
+    }
+  }
+
+  /**
+   * The tallies of one channel. Observations are usually in time order, so the tally of the last observation is tried first
+   */
+  private class ChannelTallies {
+    final int channelID;
+    private final HashMap<Long, VehicleTallyRec> byPeriod = new HashMap<Long, VehicleTallyRec>();
+    private final ArrayList<VehicleTallyRec> tallies = new ArrayList<VehicleTallyRec>();
+    private VehicleTallyRec current;
+    private long currentStart;
+    private long currentEnd;
+
+    ChannelTallies(int channelID) {
+      this.channelID = channelID;
+    }
+
+    void add(VehicleRec veh) throws Exception {
+      long time = veh.getTime();
+      if ((current == null) || (time < currentStart) || (time >= currentEnd))
+        moveTo(time);
+      count(veh, current);
+    }
+
+    private void moveTo(long time) throws Exception {
+      long start = T.TD.getPeriodStart(time + timezoneOffset);
+      current = byPeriod.get(start);
+      if (current == null) {
+        current = T.createContaining(channelID, time);
+        byPeriod.put(start, current);
+        tallies.add(current);
+      }
+      currentStart = current.getTimeActualStart();
+      currentEnd = current.getTimeActualEnd();
+    }
+
+    /**
+     * Creates the tallies of the periods without observations
+     * @param fromTime Inclusive
+     * @param toTime Exclusive
+     * @throws Exception
+     */
+    void fill(long fromTime, long toTime) throws Exception {
+      long time = fromTime;
+      while (time < toTime) {
+        moveTo(time);
+        time = currentEnd;
+      }
+    }
+
+    /**
+     * Sets the averages
+     * @return The tallies in the order they were created
+     */
+    List<VehicleTallyRec> finish() {
+      for (VehicleTallyRec tally: tallies) {
+        TrafficMonitoringTallyCountFields tm = tally.trafficmonitoring;
+        if (tm.totalMotorized > 0)
+          tm.averageSpeedKph = tm.sumMotorizedSpeedsKph / tm.totalMotorized;
+      }
+      return tallies;
+    }
+  }
+
+  private void count(VehicleRec veh, VehicleTallyRec tally) {
+    double kph = veh.getSpeedKph();
+
+    int vehType = veh.getVehType();
+    if (countVehType && (vehType >= 0) && (vehType <= maxVehType))
+      tally.countsVehType[vehType]++;
+
+    int speedBin = -1;
+    if (countSpeed) {
+      speedBin = getSpeedBin(kph);
+      tally.countsSpeed[speedBin]++;
+    }
+
+    int lengthBin = -1;
+    if (countLength) {
+      lengthBin = ClassifiedLengthDef.getBin(endBinsMeters, veh.lengthMeters);
+      tally.countsLength[lengthBin]++;
+    }
+
+    if (countSpeedByLength && (speedBin >= 0) && (lengthBin >= 0) && (tally.countsSpeedByLength != null))
+      tally.countsSpeedByLength[speedBin][lengthBin]++;
+
+    if ((motorizedVehType != null) && (vehType >= 0) && (vehType < motorizedVehType.length) && !motorizedVehType[vehType])
+      return;
+    TrafficMonitoringTallyCountFields tm = tally.trafficmonitoring;
+    tm.totalMotorized++;
+    tm.totalMotorizedAxles += veh.naxles;
+    tm.sumMotorizedSpeedsKph += kph;
+  }
+
+  /**
+   * As {@link ClassifiedSpeedDef#getBin(double)}, with the steps copied from the header
+   * @param kph
+   * @return The speed bin
+   */
+  private int getSpeedBin(double kph) {
+    return ClassifiedSpeedDef.getBin(firstSpeedStepKph, otherSpeedStepKph, speedBins, kph);
+  }
+}
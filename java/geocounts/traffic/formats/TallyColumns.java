@@ -0,0 +1,396 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.Arrays;
+
+/**
+ * Keeps tallies in columns. The bins of each classification are one matrix, with a row for each tally and a column for each bin,
+ * and each field in {@link TallyCountDef TF} is a column of metric values.
+ * The time, period and channel of each tally are also columns.
+ * <br />
+ * This is a {@link RawTrafficDataSink}, so any decoder can load into it. Observations and monitoring events are passed to {@link #data}:
+ * <pre>
+ * TallyColumns columns = new TallyColumns();
+ * new RawTrafficDataFileTXTDecoder().load(theInputFile, true, columns);
+ * long[] totals = columns.sumBins(columns.data.header.T.TC, 0, columns.size());
+ * </pre>
+ * The columns are laid out from the header when the first tally is added. The header should not change after that.
+ * @see VehicleTallyRec
+ * @see ObservationColumns
+ */
+public class TallyColumns implements RawTrafficDataSink {
+
+  /**
+   * TF values are kept in metric units
+   */
+  private static final UnitsUsed METRIC = new UnitsUsed();
+
+  /**
+   * The header, observations and monitoring events. Tallies are kept in this object, not in data
+   */
+  public final RawTrafficData data;
+
+  private int size;
+  private int capacity;
+  private long[] times = new long[0];
+  private int[] periods = new int[0];
+  private int[] channels = new int[0];
+
+  /**
+   * Null until the first tally is added
+   */
+  private BinMatrix vehType;
+  private BinMatrix length;
+  private BinMatrix speed;
+  /**
+   * Null if the header does not have speed by length. Each row is speed bin by length bin
+   */
+  private BinMatrix speedByLength;
+  private int speedByLengthBins;
+
+  private TallyCountField[] fields;
+  /**
+   * The metric value of each field, NaN if the tally did not have one
+   */
+  private double[][] fieldValues;
+
+  public TallyColumns() {
+    this(new RawTrafficData());
+  }
+
+  /**
+   * @param data Receives the header, observations and monitoring events
+   */
+  public TallyColumns(RawTrafficData data) {
+    this.data = data;
+  }
+
+  @Override
+  public RawTrafficDataHeader getHeader() {
+    return data.header;
+  }
+
+  @Override
+  public void onHeaderComplete() throws Exception {
+    data.onHeaderComplete();
+  }
+
+  /**
+   * Stores the tally if the header {@link RawTrafficDataHeader#acceptTally(VehicleTallyRec) accepts} it
+   */
+  @Override
+  public boolean addTally(VehicleTallyRec rec) throws Exception {
+    if (!data.header.acceptTally(rec))
+      return false;
+    add(rec);
+    return true;
+  }
+
+  @Override
+  public boolean addObservation(VehicleRec obs) throws Exception {
+    return data.addObservation(obs);
+  }
+
+  @Override
+  public boolean addMonitoringEvent(MonitoringEventRec e) throws Exception {
+    return data.addMonitoringEvent(e);
+  }
+
+  /**
+   * Copies the counts of a tally into the columns. The tally is not kept
+   * @param tally
+   */
+  public void add(VehicleTallyRec tally) {
+    if (vehType == null)
+      layout();
+    if (size == capacity)
+      grow(Math.max(16, capacity + (capacity >> 1)));
+    times[size] = tally.getTime();
+    periods[size] = tally.period;
+    channels[size] = tally.channelID;
+    vehType.store(tally.countsVehType, size);
+    length.store(tally.countsLength, size);
+    speed.store(tally.countsSpeed, size);
+    if (speedByLength != null) {
+      int bin = size * speedByLength.bins;
+      int[] counts = speedByLength.counts;
+      Arrays.fill(counts, bin, bin + speedByLength.bins, 0);
+      if (tally.countsSpeedByLength != null) {
+        int lengthBins = speedByLength.bins / speedByLengthBins;
+        for (int s=0; s<Math.min(speedByLengthBins, tally.countsSpeedByLength.length); s++) {
+          int[] row = tally.countsSpeedByLength[s];
+          System.arraycopy(row, 0, counts, bin + s*lengthBins, Math.min(lengthBins, row.length));
+        }
+      }
+    }
+    for (int f=0; f<fields.length; f++) {
+      Number value = fields[f].get(tally, METRIC);
+      fieldValues[f][size] = value != null ? value.doubleValue() : Double.NaN;
+    }
+    size++;
+  }
+
+  /**
+   * @return The number of tallies
+   */
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Shrinks the columns to the number of tallies
+   */
+  public void trimToSize() {
+    if ((vehType != null) && (capacity > size))
+      grow(size);
+  }
+
+  public long getTime(int row) {
+    checkRow(row);
+    return times[row];
+  }
+
+  /**
+   * @see VehicleTallyRec#period
+   */
+  public int getPeriod(int row) {
+    checkRow(row);
+    return periods[row];
+  }
+
+  public int getChannelID(int row) {
+    checkRow(row);
+    return channels[row];
+  }
+
+  /**
+   * The same as {@link ClassifiedDef#getTally(VehicleTallyRec, int)}, without a {@link VehicleTallyRec}
+   * @param row
+   * @param def {@link TallyRecordsDef#TC TC}, {@link TallyRecordsDef#TS TS} or {@link TallyRecordsDef#TL TL}
+   * @param bin
+   * @return The count in the bin, or 0 if there is no such bin
+   */
+  public double getTally(int row, ClassifiedDef def, int bin) {
+    checkRow(row);
+    BinMatrix m = matrixOf(def);
+    if ((bin < 0) || (bin >= m.bins))
+      return 0;
+    return m.counts[row * m.bins + bin];
+  }
+
+  /**
+   * The same as {@link TallyCountField#get(VehicleTallyRec, UnitsUsed)} in metric units, without a {@link VehicleTallyRec}
+   * @param row
+   * @param field A field in {@link TallyRecordsDef#TF TF}
+   * @return The metric value, or NaN if the tally does not have one
+   */
+  public double get(int row, TallyCountField field) {
+    checkRow(row);
+    return fieldValues[indexOf(field)][row];
+  }
+
+  /**
+   * The matrix of a classification, for loops over many tallies. The count of a bin is at row * {@link #getNumberOfBins(ClassifiedDef)} + bin.
+   * This array is replaced when the columns grow, and may be longer than the number of tallies
+   * @param def {@link TallyRecordsDef#TC TC}, {@link TallyRecordsDef#TS TS} or {@link TallyRecordsDef#TL TL}
+   * @return The counts of every tally
+   */
+  public int[] getMatrix(ClassifiedDef def) {
+    return matrixOf(def).counts;
+  }
+
+  /**
+   * @param def {@link TallyRecordsDef#TC TC}, {@link TallyRecordsDef#TS TS} or {@link TallyRecordsDef#TL TL}
+   * @return The number of bins in each row of the {@link #getMatrix(ClassifiedDef) matrix}
+   */
+  public int getNumberOfBins(ClassifiedDef def) {
+    return matrixOf(def).bins;
+  }
+
+  /**
+   * @param def {@link TallyRecordsDef#TC TC}, {@link TallyRecordsDef#TS TS} or {@link TallyRecordsDef#TL TL}
+   * @param fromRow The first tally
+   * @param toRow The tally after the last
+   * @return The total of each bin
+   */
+  public long[] sumBins(ClassifiedDef def, int fromRow, int toRow) {
+    BinMatrix m = matrixOf(def);
+    long[] result = new long[m.bins];
+    checkRange(fromRow, toRow);
+    int i = fromRow * m.bins;
+    for (int row=fromRow; row<toRow; row++) {
+      for (int bin=0; bin<m.bins; bin++)
+        result[bin] += m.counts[i++];
+    }
+    return result;
+  }
+
+  /**
+   * @param field A field in {@link TallyRecordsDef#TF TF}
+   * @param fromRow The first tally
+   * @param toRow The tally after the last
+   * @return The metric total of the field. Tallies without a value are not added
+   */
+  public double sum(TallyCountField field, int fromRow, int toRow) {
+    checkRange(fromRow, toRow);
+    double[] values = fieldValues[indexOf(field)];
+    double result = 0;
+    for (int row=fromRow; row<toRow; row++) {
+      if (!Double.isNaN(values[row]))
+        result += values[row];
+    }
+    return result;
+  }
+
+  /**
+   * @param row
+   * @return A new {@link VehicleTallyRec} of a tally
+   * @throws Exception
+   */
+  public VehicleTallyRec get(int row) throws Exception {
+    checkRow(row);
+    VehicleTallyRec result = data.header.T.create(channels[row], periods[row], 0);
+    result.time = times[row];
+    vehType.load(row, result.countsVehType);
+    length.load(row, result.countsLength);
+    speed.load(row, result.countsSpeed);
+    if ((speedByLength != null) && (result.countsSpeedByLength != null)) {
+      int lengthBins = speedByLength.bins / speedByLengthBins;
+      for (int s=0; s<Math.min(speedByLengthBins, result.countsSpeedByLength.length); s++) {
+        int[] counts = result.countsSpeedByLength[s];
+        System.arraycopy(speedByLength.counts, row * speedByLength.bins + s*lengthBins, counts, 0, Math.min(lengthBins, counts.length));
+      }
+    }
+    for (int f=0; f<fields.length; f++) {
+      double value = fieldValues[f][row];
+      if (!Double.isNaN(value))
+        fields[f].set(value, METRIC, result);
+    }
+    return result;
+  }
+
+  /**
+   * Adds every tally to a sink, in order
+   * @param result
+   * @throws Exception
+   */
+  public void addTo(RawTrafficDataSink result) throws Exception {
+    for (int row=0; row<size; row++)
+      result.addTally(get(row));
+  }
+
+  /**
+   * Fields are matched by id, so fields of another header with the same TF can be used
+   */
+  private int indexOf(TallyCountField field) {
+    if (vehType == null)
+      layout();
+    for (int f=0; f<fields.length; f++)
+      if ((fields[f] == field) || fields[f].getId().equals(field.getId()))
+        return f;
+    throw new IllegalArgumentException("Not in TF: " + field.getId());
+  }
+
+  private BinMatrix matrixOf(ClassifiedDef def) {
+    if (vehType == null)
+      layout();
+    if (def instanceof ClassifiedVehTypeDef)
+      return vehType;
+    if (def instanceof ClassifiedSpeedDef)
+      return speed;
+    return length;
+  }
+
+  private void checkRow(int row) {
+    if ((row < 0) || (row >= size))
+      throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+  }
+
+  private void checkRange(int fromRow, int toRow) {
+    if ((fromRow < 0) || (toRow > size) || (fromRow > toRow))
+      throw new IndexOutOfBoundsException("Rows " + fromRow + " to " + toRow + " of " + size);
+  }
+
+  private void layout() {
+    TallyRecordsDef T = data.header.T;
+    vehType = new BinMatrix(T.TC.getNumberOfBinsInRecord());
+    length = new BinMatrix(T.TL.getNumberOfBinsInRecord());
+    speed = new BinMatrix(T.TS.getNumberOfBinsInRecord());
+    if (T.TO.hasSpeedByLength()) {
+      speedByLengthBins = T.TS.getNumberOfBinsInRecord();
+      speedByLength = new BinMatrix(speedByLengthBins * T.TL.getNumberOfBinsInRecord());
+    }
+    fields = new TallyCountField[T.TF.numberOfFields()];
+    fieldValues = new double[fields.length][];
+    for (int f=0; f<fields.length; f++) {
+      fields[f] = T.TF.getField(f);
+      fieldValues[f] = new double[capacity];
+    }
+    grow(capacity);
+  }
+
+  private void grow(int newCapacity) {
+    times = Arrays.copyOf(times, newCapacity);
+    periods = Arrays.copyOf(periods, newCapacity);
+    channels = Arrays.copyOf(channels, newCapacity);
+    vehType.grow(newCapacity);
+    length.grow(newCapacity);
+    speed.grow(newCapacity);
+    if (speedByLength != null)
+      speedByLength.grow(newCapacity);
+    for (int f=0; f<fields.length; f++)
+      fieldValues[f] = Arrays.copyOf(fieldValues[f], newCapacity);
+    capacity = newCapacity;
+  }
+
+  /**
+   * The bins of one classification, a row for each tally
+   */
+  private static class BinMatrix {
+    final int bins;
+    int[] counts = new int[0];
+
+    BinMatrix(int bins) {
+      this.bins = Math.max(0, bins);
+    }
+
+    void grow(int capacity) {
+      counts = Arrays.copyOf(counts, capacity * bins);
+    }
+
+    void store(int[] values, int row) {
+      int start = row * bins;
+      int n = values != null ? Math.min(bins, values.length) : 0;
+      if (n > 0)
+        System.arraycopy(values, 0, counts, start, n);
+      if (n < bins)
+        Arrays.fill(counts, start + n, start + bins, 0);
+    }
+
+    void load(int row, int[] result) {
+      if (result != null)
+        System.arraycopy(counts, row * bins, result, 0, Math.min(bins, result.length));
+    }
+  }
+}
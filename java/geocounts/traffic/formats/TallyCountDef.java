@@ -32,6 +32,13 @@ public final class TallyCountDef extends RawTrafficDataHeaderElement implements
   private final HashMap<String, TallyCountField> fieldsByID = new HashMap<String, TallyCountField>();
   private final List<TallyCountField> fields = new ArrayList<TallyCountField>();
   
+  /**
+   * The slot of each {@link UserDefinedTallyField}, which is its index in {@link UserDefinedTallyFields}.
+   * A slot is never reused, so values already set on a tally keep their meaning when fields are removed
+   */
+  private final HashMap<String, Integer> userDefinedSlots = new HashMap<String, Integer>();
+  private final List<UserDefinedTallyField> userDefinedBySlot = new ArrayList<UserDefinedTallyField>();
+  
 //  private FileNamespaces fn;
   protected TallyCountDef() {
   }
@@ -52,11 +59,43 @@ public final class TallyCountDef extends RawTrafficDataHeaderElement implements
     if (!fieldsByID.containsKey(field.getId())) {
       fieldsByID.put(field.getId(), field);
       fields.add(field);
+      if (field instanceof UserDefinedTallyField)
+        addUserDefinedSlot((UserDefinedTallyField)field);
       return true;
     }
     return false;
   }
   
+  private void addUserDefinedSlot(UserDefinedTallyField field) {
+    Integer slot = userDefinedSlots.get(field.getId());
+    if (slot == null) {
+      slot = userDefinedBySlot.size();
+      userDefinedSlots.put(field.getId(), slot);
+      userDefinedBySlot.add(field);
+    } else {
+      userDefinedBySlot.set(slot, field);
+    }
+    field.setSlot(this, slot);
+  }
+  
+  /**
+   * 
+   * @param fieldName
+   * @return The slot of the {@link UserDefinedTallyField} or -1 if it has never been added
+   */
+  int getUserDefinedSlot(String fieldName) {
+    Integer result = userDefinedSlots.get(fieldName);
+    return result != null ? result : -1;
+  }
+  
+  int numberOfUserDefinedSlots() {
+    return userDefinedBySlot.size();
+  }
+  
+  UserDefinedTallyField getUserDefinedField(int slot) {
+    return userDefinedBySlot.get(slot);
+  }
+  
   /**
    * Creates a field in the current {@link TallyFieldNamespaceEnum namespace}.
    * If the field is not in the current namespace, create and add as a {@link UserDefinedTallyField}
@@ -206,7 +245,7 @@ public final class TallyCountDef extends RawTrafficDataHeaderElement implements
 //    this.fn.copyFrom(other.fn);
     clear();
     for (TallyCountField e: other.fields)
-      addField(e);
+      _addField(e);
   }
   
   public static class DuplicateField extends UserDefinedTallyField {
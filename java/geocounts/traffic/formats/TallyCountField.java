@@ -32,6 +32,17 @@ public interface TallyCountField extends IdDesc {
    */
   public Number get(VehicleTallyRec tally, UnitsUsed units);
   
+  /**
+   * Get a value from the tally record without creating a {@link Number}
+   * @param tally The tally record to get the value from
+   * @param units The units to provide the number in
+   * @return As {@link #get(VehicleTallyRec, UnitsUsed)}, or NaN where that returns null. By default this calls get
+   */
+  public default double getDouble(VehicleTallyRec tally, UnitsUsed units) {
+    Number result = get(tally, units);
+    return result != null ? result.doubleValue() : Double.NaN;
+  }
+  
   /**
    * Format the value as a String. This takes care of significant figures
    * @param tally
@@ -244,6 +244,33 @@ public enum TallyDurationEnum implements IdDesc {
    */
   public abstract void trim(GregorianCalendar result);
   
+  /**
+   * 
+   * @param millis
+   * @return The start of the period containing the time
+   * @see #trim(GregorianCalendar)
+   */
+  public long getPeriodStart(long millis) {
+    long msecs = getMSecs();
+    if (msecs > 0)
+      return Math.floorDiv(millis, msecs) * msecs;
+    return trim(millis).getTimeInMillis();
+  }
+  
+  /**
+   * 
+   * @param periodStart The {@link #getPeriodStart(long) start of a period}
+   * @return The start of the next period. Months and years have their calendar lengths
+   */
+  public long getPeriodEnd(long periodStart) {
+    long msecs = getMSecs();
+    if (msecs > 0)
+      return periodStart + msecs;
+    GregorianCalendar result = RawFmtUtils.newGregorianCalendar(periodStart);
+    result.add(GC_ID, GC_COUNT);
+    return result.getTimeInMillis();
+  }
+  
   public final GregorianCalendar trim(long millis) {
     GregorianCalendar result = RawFmtUtils.newGregorianCalendar(millis);
     this.trim(result);
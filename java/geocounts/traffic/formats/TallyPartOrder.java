@@ -32,7 +32,59 @@ public interface TallyPartOrder {
    */
   public abstract void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception;
   
+  /**
+   * Decode counts in place and update the {@link VehicleTallyRec result}
+   * @param COUNTS Counts as a tokenizer positioned before the first count
+   * @param header {@link RawTrafficDataHeader}
+   * @param opts {@link DecodingOptions}
+   * @param result {@link VehicleTallyRec}
+   * @throws Exception
+   * @see #setTally(String, RawTrafficDataHeader, DecodingOptions, VehicleTallyRec)
+   */
+  public abstract void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception;
+  
   public abstract void encode(VehicleTallyRec tally, RawTrafficDataHeader header, StringBuilder result) throws Exception;
   
   public abstract Number[] toArray(VehicleTallyRec tally, RawTrafficDataHeader header) throws Exception;
+  
+  /**
+   * 
+   * @param header {@link RawTrafficDataHeader}
+   * @return The number of values in this part of a tally record. By default this is the length of {@link #toArray(VehicleTallyRec, RawTrafficDataHeader)} for an empty tally
+   */
+  public default int numberOfValues(RawTrafficDataHeader header) {
+    try {
+      return toArray(new VehicleTallyRec(header.T, 0, 0, 0), header).length;
+    } catch (Exception ex) {
+      throw new RuntimeException("Cannot count the values of " + getID(), ex);
+    }
+  }
+  
+  /**
+   * Copies the values of this part into an array, without creating a {@link Number} for each value.
+   * By default this copies {@link #toArray(VehicleTallyRec, RawTrafficDataHeader)}
+   * @param tally {@link VehicleTallyRec}
+   * @param header {@link RawTrafficDataHeader}
+   * @param result Receives {@link #numberOfValues(RawTrafficDataHeader)} values from the offset. A TF field that is not set is NaN
+   * @param offset
+   * @return The number of values copied
+   * @throws Exception
+   */
+  public default int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, double[] result, int offset) throws Exception {
+    Number[] values = toArray(tally, header);
+    for (int i=0; i<values.length; i++)
+      result[offset + i] = values[i] != null ? values[i].doubleValue() : Double.NaN;
+    return values.length;
+  }
+  
+  /**
+   * As {@link #toArray(VehicleTallyRec, RawTrafficDataHeader, double[], int)}, for the counts of the classification parts.
+   * TF values are truncated, and a TF field that is not set is 0
+   */
+  public default int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, int[] result, int offset) throws Exception {
+    Number[] values = toArray(tally, header);
+    for (int i=0; i<values.length; i++)
+      result[offset + i] = values[i] != null ? values[i].intValue() : 0;
+    return values.length;
+  }
 }
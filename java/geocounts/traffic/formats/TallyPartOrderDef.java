@@ -83,6 +83,10 @@ public class TallyPartOrderDef extends RawTrafficDataHeaderElement {
     }
   }
   
+  /**
+   * A part of the TO record that is not a {@link TallyPartOrderEnum}. Its counts are not kept:
+   * they are ignored when a tally is decoded, and the part is encoded empty so that the parts after it stay in place
+   */
   static class TallyPartOrderUnknownImpl implements TallyPartOrder {
     private String index;
     public TallyPartOrderUnknownImpl(String id) {
@@ -96,12 +100,17 @@ public class TallyPartOrderDef extends RawTrafficDataHeaderElement {
     
     @Override
     public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
-      // TODO Auto-generated method stub
+      // the counts of an unknown part are ignored
+    }
+
+    @Override
+    public void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
+      // the counts of an unknown part are ignored
     }
 
     @Override
     public void encode(VehicleTallyRec tally, RawTrafficDataHeader header, StringBuilder result) throws Exception {
-      // TODO Auto-generated method stub
+      // an unknown part has no counts, so it is empty
     }
 
     @Override
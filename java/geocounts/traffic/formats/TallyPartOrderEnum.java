@@ -32,15 +32,24 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
   TF() {
 
     @Override
-    public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
-      String[] counts = RawFmtUtils.split(COUNTS, ',');
-      for (int i=0; i<counts.length; i++) {
-        try {
-          header.T.TF.getField(i).set(Double.parseDouble(counts[i]), header.F.FU, result);
-        } catch (Exception ex) {
+    public void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
+      int fields = header.T.TF.numberOfFields();
+      for (int i=0; COUNTS.next(); i++) {
+        if (i >= fields) {
+          if (!COUNTS.countError() && opts.assertTFValues)
+            RawFmtUtils.throwException(this, "More TF values than the " + fields + " fields in TF", COUNTS.countTokens());
+          return;
+        }
+        double value = COUNTS.parseDoubleOrNaN();
+        if (Double.isNaN(value) && !COUNTS.equalsString("NaN")) {
+          // an empty value is a field that is not set, unless the values are asserted
+          if ((COUNTS.isEmpty() && !opts.assertTFValues) || COUNTS.countError())
+            continue;
           if (opts.assertTFValues)
-            throw ex;
+            RawFmtUtils.throwException(this, "TF value " + (i + 1) + " is not a number", COUNTS.toString());
+          continue;
         }
+        header.T.TF.getField(i).set(value, header.F.FU, result);
       }
     }
     
@@ -65,6 +74,28 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
       }
       return result;
     }
+
+
+    @Override
+    public int numberOfValues(RawTrafficDataHeader header) {
+      return header.T.TF.numberOfFields();
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, double[] result, int offset) throws Exception {
+      int fields = header.T.TF.numberOfFields();
+      for (int i=0; i<fields; i++)
+        result[offset + i] = header.T.TF.getField(i).getDouble(tally, header.F.FU);
+      return fields;
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, int[] result, int offset) throws Exception {
+      int fields = header.T.TF.numberOfFields();
+      for (int i=0; i<fields; i++)
+        result[offset + i] = (int)header.T.TF.getField(i).getDouble(tally, header.F.FU);
+      return fields;
+    }
   },
   
   /**
@@ -74,14 +105,11 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
   TC() {
 
     @Override
-    public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
-      int[] counts = RawFmtUtils.splitInt(COUNTS, ',');
+    public void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
       if (opts.assertTCBins)
-        assertBinLength(counts, header.T.TC);
+        assertBinLength(COUNTS, header.T.TC);
       
-      for (int i=0; i<counts.length; i++) {
-        result.countsVehType[i] = counts[i];
-      }
+      setCounts(COUNTS, result.countsVehType, opts.assertTCBins, header.T.TC);
     }
 
     @Override
@@ -103,6 +131,22 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
       }
       return result;
     }
+
+
+    @Override
+    public int numberOfValues(RawTrafficDataHeader header) {
+      return header.T.TC.getNumberOfBinsInRecord();
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, double[] result, int offset) throws Exception {
+      return copyCounts(header.T.TC, tally, result, offset);
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, int[] result, int offset) throws Exception {
+      return copyCounts(header.T.TC, tally, result, offset);
+    }
   },
 
   /**
@@ -112,14 +156,11 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
   TS() {
 
     @Override
-    public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
-      int[] counts = RawFmtUtils.splitInt(COUNTS, ',');
+    public void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
       if (opts.assertTSBins)
-        assertBinLength(counts, header.T.TS);
+        assertBinLength(COUNTS, header.T.TS);
 
-      for (int i=0; i<counts.length; i++) {
-        result.countsSpeed[i] = counts[i];
-      }
+      setCounts(COUNTS, result.countsSpeed, opts.assertTSBins, header.T.TS);
     }
 
     @Override
@@ -141,6 +182,22 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
       }
       return result;
     }
+
+
+    @Override
+    public int numberOfValues(RawTrafficDataHeader header) {
+      return header.T.TS.getNumberOfBinsInRecord();
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, double[] result, int offset) throws Exception {
+      return copyCounts(header.T.TS, tally, result, offset);
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, int[] result, int offset) throws Exception {
+      return copyCounts(header.T.TS, tally, result, offset);
+    }
   },
 
   /**
@@ -150,14 +207,11 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
   TL() {
 
     @Override
-    public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
-      int[] counts = RawFmtUtils.splitInt(COUNTS, ',');
+    public void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
       if (opts.assertTLBins)
-        assertBinLength(counts, header.T.TL);
+        assertBinLength(COUNTS, header.T.TL);
       
-      for (int i=0; i<counts.length; i++) {
-        result.countsLength[i] = counts[i];
-      }
+      setCounts(COUNTS, result.countsLength, opts.assertTLBins, header.T.TL);
     }
 
     @Override
@@ -179,6 +233,22 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
       }
       return result;
     }
+
+
+    @Override
+    public int numberOfValues(RawTrafficDataHeader header) {
+      return header.T.TL.getNumberOfBinsInRecord();
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, double[] result, int offset) throws Exception {
+      return copyCounts(header.T.TL, tally, result, offset);
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, int[] result, int offset) throws Exception {
+      return copyCounts(header.T.TL, tally, result, offset);
+    }
   },
   
   /**
@@ -188,7 +258,7 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
   TP() {
 
     @Override
-    public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
+    public void setTally(RawFmtTokenizer COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
       ClassifiedDef L = header.T.TL;
       int lengthbins = 1 + L.getMaximumBin() - L.getMinimumBin();
       if (lengthbins == 0)
@@ -197,9 +267,13 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
       int speedbin = 0;
       int lengthbin = 0;
       
-      int[] counts = RawFmtUtils.splitInt(COUNTS, ',');
-      for (int i=0; i<counts.length; i++) {
-        result.countsSpeedByLength[speedbin][lengthbin] = counts[i];
+      while (COUNTS.next()) {
+        if (speedbin == result.countsSpeedByLength.length) {
+          if (!COUNTS.countError())
+            RawFmtUtils.throwException(this, "More TP counts than the " + speedbin + " TS bins by " + lengthbins + " TL bins", COUNTS.countTokens());
+          return;
+        }
+        result.countsSpeedByLength[speedbin][lengthbin] = COUNTS.isEmpty() ? 0 : COUNTS.parseInt();
         lengthbin++;
         if (lengthbin == lengthbins) {
           lengthbin = 0;
@@ -210,12 +284,13 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
 
     @Override
     public void encode(VehicleTallyRec tally, RawTrafficDataHeader header, StringBuilder result) throws Exception {
-      Number[] data = toArray(tally, header);
+      int[] data = new int[numberOfValues(header)];
+      toArray(tally, header, data, 0);
 
       for (int bin=0; bin<data.length; bin++) {
         if (bin>0)
           result.append(',');
-        result.append(data[bin].intValue());
+        result.append(data[bin]);
       }
     }
 
@@ -237,12 +312,94 @@ public enum TallyPartOrderEnum implements TallyPartOrder {
       }
       return result;
     }
+
+
+    @Override
+    public int numberOfValues(RawTrafficDataHeader header) {
+      ClassifiedSpeedDef S = header.T.TS;
+      ClassifiedDef L = header.T.TL;
+      return (1 + S.getMaximumBin() - S.getMinimumBin()) * (1 + L.getMaximumBin() - L.getMinimumBin());
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, double[] result, int offset) throws Exception {
+      ClassifiedSpeedDef S = header.T.TS;
+      ClassifiedDef L = header.T.TL;
+      int bin = offset;
+      for (int speedbin=S.getMinimumBin(); speedbin<=S.getMaximumBin(); speedbin++) {
+        int[] counts = tally.countsSpeedByLength[speedbin];
+        for (int lengthbin=L.getMinimumBin(); lengthbin<=L.getMaximumBin(); lengthbin++)
+          result[bin++] = counts[lengthbin];
+      }
+      return bin - offset;
+    }
+
+    @Override
+    public int toArray(VehicleTallyRec tally, RawTrafficDataHeader header, int[] result, int offset) throws Exception {
+      ClassifiedSpeedDef S = header.T.TS;
+      ClassifiedDef L = header.T.TL;
+      int bin = offset;
+      for (int speedbin=S.getMinimumBin(); speedbin<=S.getMaximumBin(); speedbin++) {
+        int[] counts = tally.countsSpeedByLength[speedbin];
+        for (int lengthbin=L.getMinimumBin(); lengthbin<=L.getMaximumBin(); lengthbin++)
+          result[bin++] = counts[lengthbin];
+      }
+      return bin - offset;
+    }
     
   };
   
-  protected void assertBinLength(int[] counts, ClassifiedDef def) throws GCTrafficFormatException {
-    if (counts.length != def.getNumberOfBinsInRecord())
-      RawFmtUtils.throwException(this, counts.length + " elements in the " + def.getSourceRecord().name() + " classification part does not match " + def.getSourceRecord().name() + " definition requirements of " + def.getNumberOfBinsInRecord(), counts.length + " <> " + def.getNumberOfBinsInRecord());
+  @Override
+  public void setTally(String COUNTS, RawTrafficDataHeader header, DecodingOptions opts, VehicleTallyRec result) throws Exception {
+    setTally(new RawFmtTokenizer().reset(COUNTS, ','), header, opts, result);
+  }
+  
+  /**
+   * In lenient mode a mismatch is {@link RawFmtTokenizer#countError() counted} instead of thrown
+   */
+  protected void assertBinLength(RawFmtTokenizer COUNTS, ClassifiedDef def) throws GCTrafficFormatException {
+    int numberOfCounts = COUNTS.countTokens();
+    if ((numberOfCounts != def.getNumberOfBinsInRecord()) && !COUNTS.countError())
+      assertBinLength(numberOfCounts, def);
+  }
+
+  /**
+   * Sets the counts of a classification part. Counts beyond the last bin are not set
+   * @param counts The bins of the tally
+   * @param asserted If true, the number of counts was already {@link #assertBinLength(RawFmtTokenizer, ClassifiedDef) asserted}
+   */
+  protected void setCounts(RawFmtTokenizer COUNTS, int[] counts, boolean asserted, ClassifiedDef def) throws GCTrafficFormatException {
+    for (int i=0; COUNTS.next(); i++) {
+      if (i == counts.length) {
+        if (!asserted && !COUNTS.countError())
+          assertBinLength(COUNTS.countTokens(), def);
+        return;
+      }
+      counts[i] = COUNTS.isEmpty() ? 0 : COUNTS.parseInt();
+    }
+  }
+
+  protected void assertBinLength(int numberOfCounts, ClassifiedDef def) throws GCTrafficFormatException {
+    if (numberOfCounts != def.getNumberOfBinsInRecord())
+      RawFmtUtils.throwException(this, numberOfCounts + " elements in the " + def.getSourceRecord().name() + " classification part does not match " + def.getSourceRecord().name() + " definition requirements of " + def.getNumberOfBinsInRecord(), numberOfCounts + " <> " + def.getNumberOfBinsInRecord());
+  }
+
+  /**
+   * Copies the bins of a classification part, from bin 0 to the maximum bin
+   * @return The number of counts copied
+   */
+  protected int copyCounts(ClassifiedDef C, VehicleTallyRec tally, double[] result, int offset) {
+    int bins = C.getNumberOfBinsInRecord();
+    for (int bin=0; bin<bins; bin++)
+      result[offset + bin] = (int)C.getTally(tally, bin);
+    return bins;
+  }
+
+  protected int copyCounts(ClassifiedDef C, VehicleTallyRec tally, int[] result, int offset) {
+    int bins = C.getNumberOfBinsInRecord();
+    for (int bin=0; bin<bins; bin++)
+      result[offset + bin] = (int)C.getTally(tally, bin);
+    return bins;
   }
 
   @Override
@@ -0,0 +1,226 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Sums {@link VehicleTallyRec tallies} into tallies of a longer {@link TallyDurationEnum duration}, for example 5 minute tallies into hourly tallies.
+ * The tallies of each channel must arrive in time order. Each channel has one open tally, which is passed to the result as soon as
+ * a tally of the channel's next period arrives, so only one tally for each channel is kept.
+ * Observations and monitoring events are passed to the result unchanged.
+ * <pre>
+ * RawTrafficData hourly = new RawTrafficData();
+ * TallyReaggregator reaggregator = new TallyReaggregator(TallyDurationEnum.hr, hourly);
+ * new RawTrafficDataFileTXTDecoder().load(theInputFile, true, reaggregator);
+ * reaggregator.finish();
+ * </pre>
+ * You <b>must</b> call {@link #finish()} after the last tally.
+ * @see VehicleTallyRec#addToTotals(VehicleTallyRec)
+ */
+public class TallyReaggregator implements RawTrafficDataSink {
+  private final RawTrafficDataHeader header;
+  private final TallyDurationEnum TD;
+  private final RawTrafficDataSink result;
+
+  /**
+   * The open tally of each channel
+   */
+  private final HashMap<Integer, Accumulator> open = new HashMap<Integer, Accumulator>();
+
+  /**
+   * The header records are decoded into a new header
+   * @param TD The duration of the result tallies
+   * @param result Receives the header, with TD changed, and the longer tallies
+   */
+  public TallyReaggregator(TallyDurationEnum TD, RawTrafficDataSink result) {
+    this(new RawTrafficDataHeader(), TD, result);
+  }
+
+  /**
+   *
+   * @param header The header of the tallies that are added
+   * @param TD The duration of the result tallies
+   * @param result Receives the header, with TD changed, and the longer tallies
+   */
+  public TallyReaggregator(RawTrafficDataHeader header, TallyDurationEnum TD, RawTrafficDataSink result) {
+    this.header = header;
+    this.TD = TD;
+    this.result = result;
+  }
+
+  /**
+   * Sums the tallies of the source into a new {@link RawTrafficData}. Observations and monitoring events are not copied
+   * @param source Its tallies are {@link RawTrafficData#sortTallies() sorted} first
+   * @param TD The duration of the result tallies
+   * @return A new {@link RawTrafficData} with a copy of the source header, with TD changed
+   * @throws Exception If the source tallies cannot be summed into TD
+   */
+  public static RawTrafficData reaggregate(RawTrafficData source, TallyDurationEnum TD) throws Exception {
+    RawTrafficData result = new RawTrafficData();
+    TallyReaggregator reaggregator = new TallyReaggregator(source.header, TD, result);
+    reaggregator.onHeaderComplete();
+    source.sortTallies();
+    for (VehicleTallyRec tally: source.tallies())
+      reaggregator.addTally(tally);
+    reaggregator.finish();
+    return result;
+  }
+
+  /**
+   *
+   * @param from
+   * @param to
+   * @return True if each period of to is made of whole periods of from
+   */
+  public static boolean canReaggregate(TallyDurationEnum from, TallyDurationEnum to) {
+    if ((from == TallyDurationEnum.off) || (to == TallyDurationEnum.off))
+      return false;
+    if (to.getMSecs() > 0)
+      return (from.getMSecs() > 0) && (to.getMSecs() % from.getMSecs() == 0);
+    // months and years
+    return (from.getMSecs() > 0) || (from == to) || (to == TallyDurationEnum.year);
+  }
+
+  @Override
+  public RawTrafficDataHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Copies the header to the result, with the longer TD
+   * @throws Exception If the tallies cannot be summed into TD
+   */
+  @Override
+  public void onHeaderComplete() throws Exception {
+    if (!canReaggregate(header.T.TD, TD))
+      RawFmtUtils.throwException(this, "Tallies cannot be summed into a duration of " + TD.getDescription(), header.T.TD);
+    RawTrafficDataHeader target = result.getHeader();
+    target.copyFrom(header);
+    target.T.TD = TD;
+    result.onHeaderComplete();
+  }
+
+  /**
+   * Adds the tally to the open tally of its channel. If the tally is after the open tally, the open tally is passed to the result first
+   * @throws Exception If the tally is before the open tally of its channel
+   */
+  @Override
+  public boolean addTally(VehicleTallyRec rec) throws Exception {
+    long start = rec.getTimeActualStart();
+    Accumulator acc = open.get(rec.channelID);
+    if (acc != null) {
+      if (start >= acc.end) {
+        open.remove(rec.channelID);
+        acc.emit();
+        acc = null;
+      } else if (start < acc.start) {
+        RawFmtUtils.throwException(this, "Tallies of channel " + rec.channelID + " are not in time order", RawFmtUtils.ISO8601_MSECS_format(start));
+      }
+    }
+    if (acc == null) {
+      acc = new Accumulator(result.getHeader().T.createContaining(rec.channelID, start));
+      open.put(rec.channelID, acc);
+    }
+    acc.add(rec);
+    return true;
+  }
+
+  @Override
+  public boolean addObservation(VehicleRec obs) throws Exception {
+    return result.addObservation(obs);
+  }
+
+  @Override
+  public boolean addMonitoringEvent(MonitoringEventRec e) throws Exception {
+    return result.addMonitoringEvent(e);
+  }
+
+  /**
+   * Passes the open tallies to the result, in time order
+   * @throws Exception
+   */
+  public void finish() throws Exception {
+    ArrayList<VehicleTallyRec> last = new ArrayList<VehicleTallyRec>(open.size());
+    for (Accumulator acc: open.values()) {
+      acc.setAverages();
+      last.add(acc.tally);
+    }
+    open.clear();
+    TrafficElementSorter.sortTallies(last);
+    for (VehicleTallyRec tally: last)
+      result.addTally(tally);
+  }
+
+  /**
+   * A result tally and the sums of the averaged fields of the tallies added to it
+   */
+  private class Accumulator {
+    final VehicleTallyRec tally;
+    final long start;
+    final long end;
+
+    /**
+     * Average speeds weighted by the number of motorized vehicles
+     */
+    private double sumSpeedsKph;
+    private long numberOfSpeeds;
+
+    private double sumOccupancy;
+    private double sumTempAirC;
+    private double sumRSSI;
+    private int numberOfTallies;
+
+    Accumulator(VehicleTallyRec tally) {
+      this.tally = tally;
+      this.start = tally.getTimeActualStart();
+      this.end = tally.getTimeActualEnd();
+    }
+
+    void add(VehicleTallyRec rec) {
+      tally.addToTotals(rec);
+      TrafficMonitoringTallyCountFields tm = rec.trafficmonitoring;
+      sumSpeedsKph += tm.averageSpeedKph * tm.totalMotorized;
+      numberOfSpeeds += tm.totalMotorized;
+      sumOccupancy += tm.averageOccupancy;
+      sumTempAirC += tm.averageTempAirC;
+      sumRSSI += tm.averageRSSI;
+      numberOfTallies++;
+    }
+
+    void setAverages() {
+      TrafficMonitoringTallyCountFields tm = tally.trafficmonitoring;
+      if ((tm.sumMotorizedSpeedsKph > 0) && (tm.totalMotorized > 0))
+        tm.averageSpeedKph = tm.sumMotorizedSpeedsKph / tm.totalMotorized;
+      else if (numberOfSpeeds > 0)
+        tm.averageSpeedKph = sumSpeedsKph / numberOfSpeeds;
+      if (numberOfTallies > 0) {
+        tm.averageOccupancy = sumOccupancy / numberOfTallies;
+        tm.averageTempAirC = sumTempAirC / numberOfTallies;
+        tm.averageRSSI = sumRSSI / numberOfTallies;
+      }
+    }
+
+    void emit() throws Exception {
+      setAverages();
+      result.addTally(tally);
+    }
+  }
+}
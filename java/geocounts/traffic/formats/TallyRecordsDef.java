@@ -146,6 +146,23 @@ public final class TallyRecordsDef {
     return result;
   }
 
+  /**
+   * This creates a new {@link VehicleTallyRec tally} for the period containing a time. You must then call {@link RawTrafficData#addTally(VehicleTallyRec)} to add it to the data.
+   * @param channelID The {@link ChannelData#getChannelID() channel ID} of the new tally
+   * @param time A time, such as the {@link VehicleRec#getTime() time of an observation}
+   * @return A new {@link VehicleTallyRec} with its hour and period set
+   * @throws Exception If the header does not specify a duration
+   */
+  public VehicleTallyRec createContaining(int channelID, long time) throws Exception {
+    if (TD == TallyDurationEnum.off)
+      throw new NoTDException(this, TD);
+    long start = TD.getPeriodStart(time + SZ.getRecordedTimestampOffset());
+    if (!TD.isSubHour())
+      return create(channelID, 0, start);
+    long hour = Math.floorDiv(start, 3600000L) * 3600000L;
+    return create(channelID, (int)((start - hour) / TD.getMSecs()) + 1, hour);
+  }
+
   public class NoTDException extends GCTrafficFormatException {
 
     public NoTDException(Object _caller, Object _context) {
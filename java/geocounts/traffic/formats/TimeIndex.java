@@ -0,0 +1,220 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Finds records of a {@link RawTrafficData} by time, and by channel and time, with a binary search.
+ * The records are kept in partitions, one for all the channels and one for each channel, each sorted by time.
+ * The index is built from the records on the first query, then records are {@link #add(RawTrafficDataTrafficElement) added} to it as they are added to the data.
+ * A record added out of time order only marks its partitions to be sorted again on the next query.
+ * This is not thread safe
+ * @param <T>
+ * @see RawTrafficData#observations(int, long, long)
+ * @see RawTrafficData#tallies(int, long, long)
+ */
+abstract class TimeIndex<T extends RawTrafficDataTrafficElement> {
+  private final List<T> source;
+
+  /**
+   * All the records. Null until the index is built
+   */
+  private Partition<T> all;
+  private HashMap<Integer, Partition<T>> byChannel;
+
+  /**
+   *
+   * @param source The records that are indexed
+   */
+  TimeIndex(List<T> source) {
+    this.source = source;
+  }
+
+  /**
+   *
+   * @param rec
+   * @return The time the record is found by
+   */
+  abstract long timeOf(T rec);
+
+  /**
+   * Call after a record is added to the source
+   * @param rec
+   */
+  void add(T rec) {
+    if (all == null)
+      return;
+    long time = timeOf(rec);
+    all.add(rec, time);
+    partition(rec.channelID).add(rec, time);
+  }
+
+  /**
+   * Call after records are removed from the source, or the time or channel of a record is changed.
+   * The index is built again on the next query
+   */
+  void invalidate() {
+    all = null;
+    byChannel = null;
+  }
+
+  /**
+   *
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return The records of all the channels in the time range, sorted by time
+   */
+  List<T> get(long fromTime, long toTime) {
+    build();
+    all.sort(this);
+    return all.get(fromTime, toTime);
+  }
+
+  /**
+   *
+   * @param channelID
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return The records of the channel in the time range, sorted by time
+   */
+  List<T> get(int channelID, long fromTime, long toTime) {
+    build();
+    Partition<T> p = byChannel.get(channelID);
+    if (p == null)
+      return Collections.emptyList();
+    p.sort(this);
+    return p.get(fromTime, toTime);
+  }
+
+  /**
+   *
+   * @param channelID The channel, or -1 for all channels
+   * @param time
+   * @return The records at or before the time, sorted by time, starting with the first one that the test accepts.
+   * Records before the last time are tested from the last backwards until the test rejects one
+   */
+  List<T> getEndingWith(int channelID, long time, RecordTest<T> test) {
+    build();
+    Partition<T> p = channelID < 0 ? all : byChannel.get(channelID);
+    if (p == null)
+      return Collections.emptyList();
+    p.sort(this);
+    int to = p.lowerBound(time == Long.MAX_VALUE ? time : time + 1);
+    int from = to;
+    while ((from > 0) && test.accept(p.records.get(from - 1)))
+      from--;
+    return Collections.unmodifiableList(p.records.subList(from, to));
+  }
+
+  interface RecordTest<T> {
+    boolean accept(T rec);
+  }
+
+  private void build() {
+    if (all != null)
+      return;
+    all = new Partition<T>(source.size());
+    byChannel = new HashMap<Integer, Partition<T>>();
+    for (T rec: source) {
+      long time = timeOf(rec);
+      all.add(rec, time);
+      partition(rec.channelID).add(rec, time);
+    }
+  }
+
+  private Partition<T> partition(int channelID) {
+    Partition<T> result = byChannel.get(channelID);
+    if (result == null) {
+      result = new Partition<T>(16);
+      byChannel.put(channelID, result);
+    }
+    return result;
+  }
+
+  /**
+   * Records with their times in a parallel array, so the binary search does not read the records
+   */
+  private static class Partition<T extends RawTrafficDataTrafficElement> {
+    private final ArrayList<T> records;
+    private long[] times;
+    private boolean sorted = true;
+
+    Partition(int capacity) {
+      records = new ArrayList<T>(capacity);
+      times = new long[Math.max(capacity, 16)];
+    }
+
+    void add(T rec, long time) {
+      int n = records.size();
+      if ((n > 0) && (time < times[n - 1]))
+        sorted = false;
+      if (n == times.length)
+        times = Arrays.copyOf(times, n + (n >> 1));
+      times[n] = time;
+      records.add(rec);
+    }
+
+    List<T> get(long fromTime, long toTime) {
+      int from = lowerBound(fromTime);
+      int to = Math.max(from, lowerBound(toTime));
+      return Collections.unmodifiableList(records.subList(from, to));
+    }
+
+    void sort(final TimeIndex<T> index) {
+      if (sorted)
+        return;
+      // a stable sort, so records at the same time keep the order they were added in
+      Collections.sort(records, new Comparator<T>() {
+        @Override
+        public int compare(T o1, T o2) {
+          long t1 = index.timeOf(o1);
+          long t2 = index.timeOf(o2);
+          return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+        }
+      });
+      for (int i=0; i<records.size(); i++)
+        times[i] = index.timeOf(records.get(i));
+      sorted = true;
+    }
+
+    /**
+     *
+     * @param time
+     * @return The index of the first record at or after the time
+     */
+    int lowerBound(long time) {
+      int lo = 0;
+      int hi = records.size();
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (times[mid] < time)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      return lo;
+    }
+  }
+}
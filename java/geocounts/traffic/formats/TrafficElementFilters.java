@@ -0,0 +1,174 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Creates the common {@link TrafficElementFilter filters}.
+ * <pre>
+ * // remove the vehicles of channel 3 faster than 200 km/h
+ * data.removeObservations(TrafficElementFilters.and(TrafficElementFilters.&lt;VehicleRec&gt;channel(3),
+ *                                                   TrafficElementFilters.between(VehicleFieldsEnum.speed, 200, Double.MAX_VALUE)), null);
+ * </pre>
+ */
+public final class TrafficElementFilters {
+  private TrafficElementFilters() {
+  }
+
+  /**
+   *
+   * @param channelID
+   * @return Includes the records of one channel
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> channel(final int channelID) {
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        return rec.channelID == channelID;
+      }
+    };
+  }
+
+  /**
+   *
+   * @param chfilter
+   * @return Includes the records of the channels the {@link ChannelIDFilter} includes
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> channels(final ChannelIDFilter chfilter) {
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        return chfilter.include(rec.channelID);
+      }
+    };
+  }
+
+  /**
+   *
+   * @param fromTime Inclusive
+   * @param toTime Exclusive
+   * @return Includes the records with a {@link RawTrafficDataTrafficElement#getTime() time} in the range
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> timeBetween(final long fromTime, final long toTime) {
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        long time = rec.getTime();
+        return (time >= fromTime) && (time < toTime);
+      }
+    };
+  }
+
+  /**
+   *
+   * @param field
+   * @param metric_min Inclusive
+   * @param metric_max Exclusive
+   * @return Includes the observations where {@link VehicleFieldsEnum#isValueBetween(VehicleRec, double, double) the field is between the values}
+   */
+  public static TrafficElementFilter<VehicleRec> between(final VehicleFieldsEnum field, final double metric_min, final double metric_max) {
+    return new TrafficElementFilter<VehicleRec>() {
+      @Override
+      public boolean include(VehicleRec rec) {
+        return field.isValueBetween(rec, metric_min, metric_max);
+      }
+    };
+  }
+
+  /**
+   *
+   * @param field
+   * @param units
+   * @param metric_min Inclusive
+   * @param metric_max Exclusive
+   * @return Includes the tallies where {@link TrafficMonitoringTallyFieldNamespace#isValueBetween(VehicleTallyRec, UnitsUsed, double, double) the field is between the values}
+   */
+  public static TrafficElementFilter<VehicleTallyRec> between(final TrafficMonitoringTallyFieldNamespace field, final UnitsUsed units, final double metric_min, final double metric_max) {
+    return new TrafficElementFilter<VehicleTallyRec>() {
+      @Override
+      public boolean include(VehicleTallyRec rec) {
+        return field.isValueBetween(rec, units, metric_min, metric_max);
+      }
+    };
+  }
+
+  /**
+   * The records are found by identity, so each lookup is constant time whatever the size of the collection
+   * @param records
+   * @return Includes the records in the collection
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> in(Collection<? extends T> records) {
+    final Set<T> set = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>(records.size()));
+    set.addAll(records);
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        return set.contains(rec);
+      }
+    };
+  }
+
+  /**
+   *
+   * @param filter
+   * @return Includes the records the filter does not include
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> not(final TrafficElementFilter<T> filter) {
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        return !filter.include(rec);
+      }
+    };
+  }
+
+  /**
+   *
+   * @param first
+   * @param second Only tested if first includes the record
+   * @return Includes the records both filters include
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> and(final TrafficElementFilter<? super T> first, final TrafficElementFilter<? super T> second) {
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        return first.include(rec) && second.include(rec);
+      }
+    };
+  }
+
+  /**
+   *
+   * @param first
+   * @param second Only tested if first does not include the record
+   * @return Includes the records either filter includes
+   */
+  public static <T extends RawTrafficDataTrafficElement> TrafficElementFilter<T> or(final TrafficElementFilter<? super T> first, final TrafficElementFilter<? super T> second) {
+    return new TrafficElementFilter<T>() {
+      @Override
+      public boolean include(T rec) {
+        return first.include(rec) || second.include(rec);
+      }
+    };
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to Transmetric America Inc (TAI) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * TAI licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * <a href="http://geocounts.com">geocounts.com</a>
+ */
+package geocounts.traffic.formats;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts body records in the same order as their compareTo, and is stable, so equal records keep their order.
+ * The keys of each record are copied into arrays, and the records are only read once and written once.
+ * <ul>
+ * <li>Records that are already sorted are not written</li>
+ * <li>Records in a few sorted runs, such as each channel in time order, are merged</li>
+ * <li>Otherwise the keys are sorted with a merge sort that splits into tasks on the {@link java.util.concurrent.ForkJoinPool}</li>
+ * </ul>
+ * @see RawTrafficData#sortObservations()
+ * @see RawTrafficData#sortTallies()
+ */
+public final class TrafficElementSorter {
+  /**
+   * More runs than this are sorted rather than merged
+   */
+  static final int MAX_MERGED_RUNS = 64;
+
+  /**
+   * Up to this many records are sorted on one thread
+   */
+  static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+  private static final int INSERTION_THRESHOLD = 32;
+
+  private TrafficElementSorter() {
+  }
+
+  /**
+   * Sorts by time, then channel, then id
+   * @param list
+   * @see ObservationRec#compareTo(ObservationRec)
+   */
+  public static <T extends ObservationRec> void sortObservations(List<T> list) {
+    Keys keys = new Keys(list.size());
+    for (int i=0; i<keys.size; i++) {
+      T rec = list.get(i);
+      keys.set(i, rec.getTime(), rec.channelID, rec.id);
+    }
+    sort(list, keys);
+  }
+
+  /**
+   * Sorts by time, then period, then channel
+   * @param list
+   * @see VehicleTallyRec#compareTo(VehicleTallyRec)
+   */
+  public static void sortTallies(List<VehicleTallyRec> list) {
+    Keys keys = new Keys(list.size());
+    for (int i=0; i<keys.size; i++) {
+      VehicleTallyRec rec = list.get(i);
+      keys.set(i, rec.getTime(), rec.period, rec.channelID);
+    }
+    sort(list, keys);
+  }
+
+  /**
+   * Sorts by time, then channel
+   * @param list
+   * @see MonitoringEventRec#compareTo(MonitoringEventRec)
+   */
+  public static void sortMonitoringEvents(List<MonitoringEventRec> list) {
+    Keys keys = new Keys(list.size());
+    for (int i=0; i<keys.size; i++) {
+      MonitoringEventRec rec = list.get(i);
+      keys.set(i, rec.getTime(), rec.channelID, 0);
+    }
+    sort(list, keys);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void sort(List<T> list, Keys keys) {
+    int n = keys.size;
+    if (n < 2)
+      return;
+
+    // find where each sorted run starts
+    int[] runStart = new int[MAX_MERGED_RUNS + 1];
+    int runs = 1;
+    for (int i=1; i<n; i++) {
+      if (keys.compare(i - 1, i) > 0) {
+        if (runs == MAX_MERGED_RUNS) {
+          runs = 0;
+          break;
+        }
+        runStart[runs++] = i;
+      }
+    }
+    if (runs == 1)
+      return;
+
+    int[] order;
+    if (runs > 0) {
+      runStart[runs] = n;
+      order = merge(keys, runStart, runs);
+    } else {
+      order = new int[n];
+      for (int i=0; i<n; i++)
+        order[i] = i;
+      new MergeSortTask(keys, order, new int[n], 0, n).invoke();
+    }
+
+    Object[] records = list.toArray();
+    for (int i=0; i<n; i++)
+      list.set(i, (T)records[order[i]]);
+  }
+
+  /**
+   * Merges the runs with a heap of the next record of each run. Equal records are taken from the earlier run first
+   * @return The index of each record in sorted order
+   */
+  private static int[] merge(Keys keys, int[] runStart, int runs) {
+    int[] next = new int[runs];
+    int[] heap = new int[runs];
+    for (int r=0; r<runs; r++) {
+      next[r] = runStart[r];
+      heap[r] = r;
+    }
+    int heapSize = runs;
+    for (int i=heapSize/2 - 1; i>=0; i--)
+      siftDown(keys, next, heap, heapSize, i);
+
+    int[] result = new int[keys.size];
+    for (int k=0; k<result.length; k++) {
+      int r = heap[0];
+      result[k] = next[r]++;
+      if (next[r] == runStart[r + 1])
+        heap[0] = heap[--heapSize];
+      siftDown(keys, next, heap, heapSize, 0);
+    }
+    return result;
+  }
+
+  private static void siftDown(Keys keys, int[] next, int[] heap, int heapSize, int i) {
+    while (true) {
+      int child = 2*i + 1;
+      if (child >= heapSize)
+        return;
+      if ((child + 1 < heapSize) && isBefore(keys, next, heap[child + 1], heap[child]))
+        child++;
+      if (!isBefore(keys, next, heap[child], heap[i]))
+        return;
+      int swap = heap[i];
+      heap[i] = heap[child];
+      heap[child] = swap;
+      i = child;
+    }
+  }
+
+  private static boolean isBefore(Keys keys, int[] next, int run1, int run2) {
+    int diff = keys.compare(next[run1], next[run2]);
+    return (diff < 0) || ((diff == 0) && (run1 < run2));
+  }
+
+  /**
+   * The keys of each record, in the order of the list
+   */
+  private static class Keys {
+    final int size;
+    final long[] time;
+    final int[] second;
+    final long[] third;
+
+    Keys(int size) {
+      this.size = size;
+      time = new long[size];
+      second = new int[size];
+      third = new long[size];
+    }
+
+    void set(int i, long time, int second, long third) {
+      this.time[i] = time;
+      this.second[i] = second;
+      this.third[i] = third;
+    }
+
+    int compare(int i, int j) {
+      if (time[i] != time[j])
+        return time[i] < time[j] ? -1 : 1;
+      if (second[i] != second[j])
+        return second[i] < second[j] ? -1 : 1;
+      if (third[i] != third[j])
+        return third[i] < third[j] ? -1 : 1;
+      return 0;
+    }
+  }
+
+  /**
+   * A stable merge sort of record indices. Each half is sorted in its own task above {@link TrafficElementSorter#SEQUENTIAL_THRESHOLD}
+   */
+  private static class MergeSortTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Keys keys;
+    private final int[] order;
+    private final int[] buffer;
+    private final int from;
+    private final int to;
+
+    MergeSortTask(Keys keys, int[] order, int[] buffer, int from, int to) {
+      this.keys = keys;
+      this.order = order;
+      this.buffer = buffer;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        sort(from, to);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new MergeSortTask(keys, order, buffer, from, mid), new MergeSortTask(keys, order, buffer, mid, to));
+      merge(from, mid, to);
+    }
+
+    private void sort(int lo, int hi) {
+      if (hi - lo <= INSERTION_THRESHOLD) {
+        for (int i=lo + 1; i<hi; i++) {
+          int rec = order[i];
+          int j = i;
+          while ((j > lo) && (keys.compare(order[j - 1], rec) > 0)) {
+            order[j] = order[j - 1];
+            j--;
+          }
+          order[j] = rec;
+        }
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      sort(lo, mid);
+      sort(mid, hi);
+      merge(lo, mid, hi);
+    }
+
+    private void merge(int lo, int mid, int hi) {
+      if (keys.compare(order[mid - 1], order[mid]) <= 0)
+        return;
+      System.arraycopy(order, lo, buffer, lo, hi - lo);
+      int i = lo;
+      int j = mid;
+      for (int k=lo; k<hi; k++) {
+        if (j >= hi)
+          order[k] = buffer[i++];
+        else if (i >= mid)
+          order[k] = buffer[j++];
+        else if (keys.compare(buffer[j], buffer[i]) < 0)
+          order[k] = buffer[j++];
+        else
+          order[k] = buffer[i++];
+      }
+    }
+  }
+}
@@ -37,6 +37,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.totalMotorized;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.totalMotorized;
+    }
+    
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
       result.totalMotorized = (long)value;
@@ -72,6 +77,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.totalPedestrians;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.totalPedestrians;
+    }
+    
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
       result.totalPedestrians = (long)value;
@@ -107,6 +117,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.totalBicycles;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.totalBicycles;
+    }
+    
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
       result.totalBicycles = (long)value;
@@ -142,6 +157,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.totalMotorizedAxles;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.totalMotorizedAxles;
+    }
+    
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
       result.totalMotorizedAxles = (long)value;
@@ -177,6 +197,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.sensorCount[0];
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.sensorCount[0];
+    }
+    
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
       result.sensorCount[0] = (int)value;
@@ -207,6 +232,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.sensorCount[1];
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.sensorCount[1];
+    }
+    
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
       result.sensorCount[1] = (int)value;
@@ -240,6 +270,13 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return 0;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      if (tally.sumMotorizedSpeedsKph != 0)
+        return units.getSpeed().toNative(tally.sumMotorizedSpeedsKph);
+      return 0;
+    }
+    
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
       return Long.toString(doGet(tally.trafficmonitoring, units).longValue());
@@ -287,9 +324,16 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return 0;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      if (tally.averageSpeedKph != 0)
+        return units.getSpeed().toNative(tally.averageSpeedKph);
+      return 0;
+    }
+    
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
-      return RawFmtUtils.df1.format(doGet(tally.trafficmonitoring, units));
+      return RawFmtUtils.formatFixed(doGet(tally.trafficmonitoring, units).doubleValue(), 1);
     }
     
     @Override
@@ -327,9 +371,14 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.averageOccupancy;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.averageOccupancy;
+    }
+    
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
-      return RawFmtUtils.df3.format(doGet(tally.trafficmonitoring, units));
+      return RawFmtUtils.formatFixed(doGet(tally.trafficmonitoring, units).doubleValue(), 3);
     }
     
     @Override
@@ -367,10 +416,15 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.averageTempAirC;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.averageTempAirC;
+    }
+    
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
       try {
-        return RawFmtUtils.df1.format(doGet(tally.trafficmonitoring, units));
+        return RawFmtUtils.formatFixed(doGet(tally.trafficmonitoring, units).doubleValue(), 1);
       } catch (java.lang.IllegalArgumentException e) {
         return "0";
       }
@@ -407,10 +461,15 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
       return tally.averageRSSI;
     }
     
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.averageRSSI;
+    }
+    
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
       try {
-        return RawFmtUtils.df1.format(doGet(tally.trafficmonitoring, units));
+        return RawFmtUtils.formatFixed(doGet(tally.trafficmonitoring, units).doubleValue(), 1);
       } catch (java.lang.IllegalArgumentException e) {
         return "0";
       }
@@ -449,6 +508,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.aadt;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.aadt;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -489,6 +553,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.aawt;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.aawt;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -529,6 +598,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.aadtpctchange;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.aadtpctchange;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -538,7 +612,7 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
       if (withinBounds(tally.trafficmonitoring))
-        return RawFmtUtils.df1.format(tally.trafficmonitoring.aadtpctchange);
+        return RawFmtUtils.formatFixed(tally.trafficmonitoring.aadtpctchange, 1);
       return "0";
     }
     
@@ -576,6 +650,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.aadtobs;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.aadtobs;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -617,6 +696,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.acf;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.acf;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -625,7 +709,7 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
-      return RawFmtUtils.df6.format(tally.trafficmonitoring.acf);
+      return RawFmtUtils.formatFixed(tally.trafficmonitoring.acf, 6);
     }
     
     @Override
@@ -665,6 +749,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.countaccuracy;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.countaccuracy;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -700,6 +789,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.truckpct;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.truckpct;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -709,7 +803,7 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     @Override
     public String format(VehicleTallyRec tally, UnitsUsed units) {
       if (withinBounds(tally.trafficmonitoring))
-        return RawFmtUtils.df1.format(tally.trafficmonitoring.truckpct);
+        return RawFmtUtils.formatFixed(tally.trafficmonitoring.truckpct, 1);
       return "0";
     }
     
@@ -737,6 +831,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     protected Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
       return tally.speedpct85;
     }
+    
+    @Override
+    protected double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units) {
+      return tally.speedpct85;
+    }
 
     @Override
     protected void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception {
@@ -776,6 +875,7 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
   }
   
   protected abstract Number doGet(TrafficMonitoringTallyCountFields tally, UnitsUsed units);
+  protected abstract double doGetDouble(TrafficMonitoringTallyCountFields tally, UnitsUsed units);
   protected abstract void doSet(double value, UnitsUsed units, TrafficMonitoringTallyCountFields result) throws Exception;
   
   protected abstract boolean withinBounds(TrafficMonitoringTallyCountFields tally);
@@ -797,6 +897,11 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
     return doGet(tally.trafficmonitoring, units);
   }
   
+  @Override
+  public final double getDouble(VehicleTallyRec tally, UnitsUsed units) {
+    return doGetDouble(tally.trafficmonitoring, units);
+  }
+  
   @Override
   public String format(VehicleTallyRec tally, UnitsUsed units) {
     Number result = get(tally, units);
@@ -820,8 +925,8 @@ public enum TrafficMonitoringTallyFieldNamespace implements TallyCountField {
   }
   
   public boolean isValueBetween(VehicleTallyRec tally, UnitsUsed units, double metric_min, double metric_max) {
-    Number n = this.get(tally, units);
-    return (n.doubleValue() >= metric_min) && (n.doubleValue() < metric_max);
+    double n = this.getDouble(tally, units);
+    return (n >= metric_min) && (n < metric_max);
   }
   
   @Override
@@ -53,28 +53,49 @@ public class TruckClassCounter implements SpecialClassificationCounter {
   }
   
   public int getOtherMotorizedCount(VehicleTallyRec tally) {
+    return getOtherMotorizedCount(tally.countsVehType);
+  }
+  
+  /**
+   * 
+   * @param countsVehType The counts of each class, as in {@link VehicleTallyRec#countsVehType} or filled by {@link TallyPartOrderEnum#TC}
+   * @return The sum of the other motorized classes
+   */
+  public int getOtherMotorizedCount(int[] countsVehType) {
     if (carClasses == null)
       return 0;
     
     int result = 0;
-    for (int vc: carClasses) {
-      try {
-        result += tally.countsVehType[vc];
-      } catch (Exception ex) {}
-    }
+    for (int vc: carClasses)
+      result += countOfClass(countsVehType, vc);
     return result;
   }
   
   public int getTruckCount(VehicleTallyRec tally) {
+    return getTruckCount(tally.countsVehType);
+  }
+  
+  /**
+   * 
+   * @param countsVehType The counts of each class, as in {@link VehicleTallyRec#countsVehType} or filled by {@link TallyPartOrderEnum#TC}
+   * @return The sum of the truck classes
+   */
+  public int getTruckCount(int[] countsVehType) {
     int result = 0;
-    for (int vc: truckClasses) {
-      try {
-        result += tally.countsVehType[vc];
-      } catch (Exception ex) {}
-    }
+    for (int vc: truckClasses)
+      result += countOfClass(countsVehType, vc);
     return result;
   }
   
+  /**
+   * @return The count of the class, or 0 if there are no counts for the class
+   */
+  private static int countOfClass(int[] counts, int vc) {
+    if ((counts == null) || (vc < 0) || (vc >= counts.length))
+      return 0;
+    return counts[vc];
+  }
+  
   @Override
   public double getCount(VehicleTallyRec tally) {
     return getTruckCount(tally);
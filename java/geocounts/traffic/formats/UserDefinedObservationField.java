@@ -21,10 +21,30 @@ package geocounts.traffic.formats;
 public class UserDefinedObservationField implements ObservationField {
   private String key;
   
+  /**
+   * The {@link VehicleRecordDef} this was last added to, and the slot of this field in it
+   */
+  private VehicleRecordDef owner;
+  private int slot = -1;
+  
   protected UserDefinedObservationField(String key) {
     this.key = key;
   }
   
+  void setSlot(VehicleRecordDef owner, int slot) {
+    this.owner = owner;
+    this.slot = slot;
+  }
+  
+  /**
+   * 
+   * @param VV
+   * @return The slot of this field in VV or -1 if it was not added to VV
+   */
+  int getSlot(VehicleRecordDef VV) {
+    return (VV != null) && (owner == VV) ? slot : -1;
+  }
+  
   @Override
   public String getId() {
     return key;
@@ -42,12 +62,17 @@ public class UserDefinedObservationField implements ObservationField {
 
   @Override
   public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-    return veh.userdefined.get(key);
+    return veh.getUserDefined(this);
   }
 
   @Override
   public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-    result.userdefined.put(key, value);
+    result.setUserDefined(this, value);
+  }
+
+  @Override
+  public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+    result.setUserDefined(this, value.toString());
   }
 
 }
@@ -27,6 +27,12 @@ public class UserDefinedTallyField implements TallyCountField {
   private String key;
   private double minValue;
   
+  /**
+   * The {@link TallyCountDef} this was last added to, and the slot of this field in it
+   */
+  private TallyCountDef owner;
+  private int slot = -1;
+  
   protected UserDefinedTallyField(String name) {
     this(name, -Double.MAX_VALUE);
   }
@@ -53,7 +59,26 @@ public class UserDefinedTallyField implements TallyCountField {
 
   @Override
   public Number get(VehicleTallyRec tally, UnitsUsed units) {
-    return tally.userdefined.get(key);
+    return tally.userdefined.get(this);
+  }
+  
+  @Override
+  public double getDouble(VehicleTallyRec tally, UnitsUsed units) {
+    return tally.userdefined.getDouble(this);
+  }
+  
+  void setSlot(TallyCountDef owner, int slot) {
+    this.owner = owner;
+    this.slot = slot;
+  }
+  
+  /**
+   * 
+   * @param TF
+   * @return The slot of this field in TF or -1 if it was not added to TF
+   */
+  int getSlot(TallyCountDef TF) {
+    return owner == TF ? slot : -1;
   }
   
   @Override
@@ -65,9 +90,9 @@ public class UserDefinedTallyField implements TallyCountField {
       return "0";
     switch (decimalPlaces) {
     case 0: return Integer.toString(result.intValue());
-    case 1: return RawFmtUtils.df1.format(result.doubleValue());
-    case 3: return RawFmtUtils.df3.format(result.doubleValue());
-    case 6: return RawFmtUtils.df6.format(result.doubleValue());
+    case 1: return RawFmtUtils.formatFixed(result.doubleValue(), 1);
+    case 3: return RawFmtUtils.formatFixed(result.doubleValue(), 3);
+    case 6: return RawFmtUtils.formatFixed(result.doubleValue(), 6);
     }
     
     return result.toString();
@@ -75,10 +100,7 @@ public class UserDefinedTallyField implements TallyCountField {
 
   @Override
   public void set(double value, UnitsUsed units, VehicleTallyRec result) throws Exception {
-    if (isInteger())
-      result.userdefined.setValue(key, (int)value);
-    else
-      result.userdefined.setValue(key, value);
+    result.userdefined.setValue(this, isInteger() ? (int)value : value);
   }
   
   @Override
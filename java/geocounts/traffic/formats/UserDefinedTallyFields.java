@@ -18,47 +18,229 @@
  */
 package geocounts.traffic.formats;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
- * Represents any unknown tallied fields
+ * Represents any unknown tallied fields.
+ * Each {@link UserDefinedTallyField} in the header's {@link TallyRecordsDef#TF TF} has a {@link TallyCountDef#getUserDefinedSlot(String) slot},
+ * and the values of those fields are kept in an array by slot. Fields that are not in TF are kept by name,
+ * and are moved into their slot the first time they are used after they are added to TF
  * @see TallyFieldNamespaceEnum#userdefined
  * @see UserDefinedTallyField
  * @see TrafficMonitoringTallyFieldNamespace
  */
 public class UserDefinedTallyFields {
+  private final TallyCountDef TF;
+  
   protected UserDefinedTallyFields(TallyRecordsDef T) {
+    this.TF = T.TF;
   }
   
-  private final HashMap<String, Number> values = new HashMap<String, Number>();
+  /**
+   * The value of each field in TF, by slot. NaN if the field is not set. Null until a value is set
+   */
+  private double[] values;
+  
+  /**
+   * Fields that are not in TF. Null until one is set
+   */
+  private HashMap<String, Number> others;
 
   public void setValue(String name, double value) {
-    values.put(name, value);
+    int slot = slotOf(name);
+    if (slot >= 0)
+      setSlot(slot, value);
+    else
+      others().put(name, value);
   }
   
   public void setValue(String name, int value) {
-    values.put(name, value);
+    int slot = slotOf(name);
+    if (slot >= 0)
+      setSlot(slot, value);
+    else
+      others().put(name, value);
   }
 
+  /**
+   * Sets a field without looking up its name, when the field is in TF
+   * @param field
+   * @param value
+   */
+  void setValue(UserDefinedTallyField field, double value) {
+    int slot = slotOf(field);
+    if (slot >= 0)
+      setSlot(slot, value);
+    else if (field.isInteger())
+      setValue(field.getId(), (int)value);
+    else
+      setValue(field.getId(), value);
+  }
+  
+  /**
+   * Gets a field without looking up its name, when the field is in TF
+   * @param field
+   * @return As {@link #get(String)}
+   */
+  Number get(UserDefinedTallyField field) {
+    int slot = slotOf(field);
+    return slot >= 0 ? getSlot(slot, field) : get(field.getId());
+  }
+  
+  /**
+   * Gets a field without creating a {@link Number}
+   * @param field
+   * @return As {@link #get(UserDefinedTallyField)}, or NaN if the field is not set
+   */
+  double getDouble(UserDefinedTallyField field) {
+    int slot = slotOf(field);
+    if (slot < 0) {
+      Number result = get(field.getId());
+      return result != null ? result.doubleValue() : Double.NaN;
+    }
+    double value = getSlot(slot);
+    if (field.isInteger() && !Double.isNaN(value))
+      return (int)value;
+    return value;
+  }
+  
+  /**
+   * 
+   * @param key
+   * @return An Integer if the field {@link UserDefinedTallyField#isInteger() is an integer}, otherwise a Double. Null if the field is not set
+   */
   public Number get(String key) {
-    return values.get(key);
+    int slot = slotOf(key);
+    if (slot < 0)
+      return others != null ? others.get(key) : null;
+    return getSlot(slot, TF.getUserDefinedField(slot));
+  }
+  
+  private Number getSlot(int slot, UserDefinedTallyField field) {
+    double value = getSlot(slot);
+    if (Double.isNaN(value))
+      return null;
+    if (field.isInteger())
+      return Integer.valueOf((int)value);
+    return Double.valueOf(value);
   }
   
   public int asInt(String key, int defaultValue) {
-    Number result = values.get(key);
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      double value = getSlot(slot);
+      return Double.isNaN(value) ? defaultValue : (int)value;
+    }
+    Number result = others != null ? others.get(key) : null;
     return result != null ? result.intValue() : defaultValue;
   }
   
   public double asDouble(String key, double defaultValue) {
-    Number result = values.get(key);
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      double value = getSlot(slot);
+      return Double.isNaN(value) ? defaultValue : value;
+    }
+    Number result = others != null ? others.get(key) : null;
     return result != null ? result.doubleValue() : defaultValue;
   }
   
   public boolean contains(String key) {
-    return values.containsKey(key);
+    int slot = slotOf(key);
+    if (slot >= 0)
+      return !Double.isNaN(getSlot(slot));
+    return (others != null) && others.containsKey(key);
   }
   
+  /**
+   * Adds each field of the other tally to the same field of this tally. A field that is not set here starts from 0
+   * @param other
+   */
   public void addToTotals(UserDefinedTallyFields other) {
-    // NOT CLEAR HOW TO DEAL WITH THIS
+    if (other == null)
+      return;
+    if (other.values != null) {
+      for (int slot=0; slot<other.values.length; slot++) {
+        double value = other.values[slot];
+        if (Double.isNaN(value))
+          continue;
+        if (other.TF == TF)
+          addToSlot(moveToSlot(slot, TF.getUserDefinedField(slot).getId()), value);
+        else
+          add(other.TF.getUserDefinedField(slot).getId(), value);
+      }
+    }
+    if (other.others != null) {
+      for (Map.Entry<String, Number> e: other.others.entrySet())
+        add(e.getKey(), e.getValue());
+    }
+  }
+  
+  private void add(String name, Number value) {
+    int slot = slotOf(name);
+    if (slot >= 0) {
+      addToSlot(slot, value.doubleValue());
+      return;
+    }
+    Number current = others().get(name);
+    if (current == null)
+      others.put(name, value);
+    else if ((current instanceof Integer) && (value instanceof Integer))
+      others.put(name, current.intValue() + value.intValue());
+    else
+      others.put(name, current.doubleValue() + value.doubleValue());
+  }
+  
+  private void addToSlot(int slot, double value) {
+    double current = getSlot(slot);
+    setSlot(slot, Double.isNaN(current) ? value : current + value);
+  }
+  
+  private int slotOf(String name) {
+    return moveToSlot(TF.getUserDefinedSlot(name), name);
+  }
+  
+  private int slotOf(UserDefinedTallyField field) {
+    return moveToSlot(field.getSlot(TF), field.getId());
+  }
+  
+  /**
+   * A field that was set by name before it was added to TF is moved into its slot, unless the slot already has a value
+   * @param slot
+   * @param name
+   * @return The slot
+   */
+  private int moveToSlot(int slot, String name) {
+    if ((slot >= 0) && (others != null) && !others.isEmpty()) {
+      Number value = others.remove(name);
+      if ((value != null) && Double.isNaN(getSlot(slot)))
+        setSlot(slot, value.doubleValue());
+    }
+    return slot;
+  }
+  
+  private double getSlot(int slot) {
+    return (values != null) && (slot < values.length) ? values[slot] : Double.NaN;
+  }
+  
+  private void setSlot(int slot, double value) {
+    if ((values == null) || (slot >= values.length)) {
+      // slots added to TF after the first value was set are not in the array
+      int n = values != null ? values.length : 0;
+      double[] grown = new double[Math.max(slot + 1, TF.numberOfUserDefinedSlots())];
+      if (n > 0)
+        System.arraycopy(values, 0, grown, 0, n);
+      Arrays.fill(grown, n, grown.length, Double.NaN);
+      values = grown;
+    }
+    values[slot] = value;
+  }
+  
+  private HashMap<String, Number> others() {
+    if (others == null)
+      others = new HashMap<String, Number>();
+    return others;
   }
 }
@@ -18,6 +18,8 @@
  */
 package geocounts.traffic.formats;
 
+import geocounts.formats.units.UnitConverter;
+
 /**
  * Represents all measured fields in the V record type
  * @see VehicleRecordDef
@@ -41,8 +43,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.id = Long.parseLong(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.id = value.parseLong();
     }
 
   },
@@ -52,21 +54,16 @@ public enum VehicleFieldsEnum implements ObservationField {
    * @see VehicleRec#speedKph
    * @see TrafficMonitoringTallyFieldNamespace#speeda
    */
-  speed("Observed speed", "FU speed", 1) {
+  speed("Observed speed", "FU speed", FUUnits.speed, 1) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.speedKph >= metric_min) && (value.speedKph < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.speedKph;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df1.format(units.getSpeed().toNative(veh.speedKph));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.speedKph = units.getSpeed().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.speedKph = metricValue;
     }
 
   },
@@ -84,8 +81,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.naxles = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.naxles = value.parseInt();
     }
 
   },
@@ -93,21 +90,16 @@ public enum VehicleFieldsEnum implements ObservationField {
   /**
    * Distance between the first and last axle of a vehicle (metric = meters)
    */
-  wbase("Wheelbase", "FU length", 1) {
+  wbase("Wheelbase", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.wheelbaseMeters >= metric_min) && (value.wheelbaseMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.wheelbaseMeters;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.wheelbaseMeters));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.wheelbaseMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.wheelbaseMeters = metricValue;
     }
 
   },
@@ -115,42 +107,32 @@ public enum VehicleFieldsEnum implements ObservationField {
   /**
    * Length of the observation (metric = meters)
    */
-  length("Length", "FU length", 1) {
+  length("Length", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.lengthMeters >= metric_min) && (value.lengthMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.lengthMeters;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.lengthMeters));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.lengthMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.lengthMeters = metricValue;
     }
 
   },
   /**
    * Length of the portion overhanging the back axle (metric = meters)
    */
-  overhang("Overhang", "FU length", 1) {
+  overhang("Overhang", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.overhangMeters >= metric_min) && (value.overhangMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.overhangMeters;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.overhangMeters));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.overhangMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.overhangMeters = metricValue;
     }
 
   },
@@ -171,29 +153,24 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.delaySec = (int)Double.parseDouble(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.delaySec = (int)value.parseDouble();
     }
   },
 
   /**
    * Height of a vehicle chassis above the surface (metric = meters)
    */
-  chassisheight("Chassis height", "FU length", 1) {
+  chassisheight("Chassis height", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.chassisheightMeters >= metric_min) && (value.chassisheightMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.chassisheightMeters;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.chassisheightMeters));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.chassisheightMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.chassisheightMeters = metricValue;
     }
 
   },
@@ -214,29 +191,24 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.chassisCode = Long.parseLong(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.chassisCode = value.parseLong();
     }
   },
   
   /**
    * Width of the observation (metric = meters)
    */
-  width("Width", "FU length", 1) {
+  width("Width", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.widthMeters >= metric_min) && (value.widthMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.widthMeters;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.widthMeters));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.widthMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.widthMeters = metricValue;
     }
 
   },
@@ -244,21 +216,16 @@ public enum VehicleFieldsEnum implements ObservationField {
   /**
    * Height of the observation. This is how tall the object is, not its height above sea level. (metric = meters)
    */
-  height("Height", "FU length", 1) {
+  height("Height", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.heightMeters >= metric_min) && (value.heightMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.heightMeters;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.heightMeters));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.heightMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.heightMeters = metricValue;
     }
 
   },
@@ -266,21 +233,16 @@ public enum VehicleFieldsEnum implements ObservationField {
   /**
    * Mass of the observation (metric = kg)
    */
-  mass("Mass", "FU mass", 1) {
+  mass("Mass", "FU mass", FUUnits.mass, 1) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.massKg >= metric_min) && (value.massKg < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.massKg;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df1.format(units.mass.toNative(veh.massKg));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.massKg = units.mass.toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.massKg = metricValue;
     }
 
   },
@@ -290,42 +252,34 @@ public enum VehicleFieldsEnum implements ObservationField {
    * @see <a href="https://en.wikipedia.org/wiki/Curb_weight">Curb weight</a>
    * @see <a href="https://en.wikipedia.org/wiki/Tare_weight">Tare weight</a>
    */
-  masstare("Tare Mass", "FU mass", 1) {
+  masstare("Tare Mass", "FU mass", FUUnits.mass, 1) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.massTareKg >= metric_min) && (value.massTareKg < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.massTareKg;
     }
 
     @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df1.format(units.mass.toNative(veh.massTareKg));
-    }
-    
-    @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.massTareKg = units.mass.toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.massTareKg = metricValue;
     }
+
   },
   /**
    * Legal mass of the vehicle (metric = kg)
    */
-  masslegal("Legal Mass", "FU mass", 1) {
+  masslegal("Legal Mass", "FU mass", FUUnits.mass, 1) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.massLegalKg >= metric_min) && (value.massLegalKg < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.massLegalKg;
     }
-    
-    @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df1.format(units.mass.toNative(veh.massLegalKg));
-    }
-    
+
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.massLegalKg = units.mass.toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.massLegalKg = metricValue;
     }
+
   },
   /**
    * The measured vehicle color. Eg FF0000 is 'red'
@@ -338,29 +292,24 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.color = value;
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.color = value.toString();
     }
 
   },
   /**
    * Distance from the center of the lane (metric = meters)
    */
-  center("Distance from center", "FU length", 1) {
+  center("Distance from center", "FU length", FUUnits.lengthShort, 3) {
 
     @Override
-    public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.centerMeters >= metric_min) && (value.centerMeters < metric_max);
+    protected double getMetric(VehicleRec veh) {
+      return veh.centerMeters;
     }
-    
-    @Override
-    public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return RawFmtUtils.df3.format(units.getLengthShort().toNative(veh.centerMeters));
-    }
-    
+
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.centerMeters = units.getLengthShort().toMetric( Double.parseDouble(value) );
+    public void setMetric(double metricValue, VehicleRec result) {
+      result.centerMeters = metricValue;
     }
 
   },
@@ -376,8 +325,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.tsig = SignalPhase.values()[ Integer.parseInt(value) ];
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.tsig = SignalPhase.values()[ value.parseInt() ];
     }
   },
 
@@ -389,17 +338,17 @@ public enum VehicleFieldsEnum implements ObservationField {
   vclass("Type Class (primary)", null, -1) {
     @Override
     public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.otherClassifications.vclassType[0] >= metric_min) && (value.otherClassifications.vclassType[0] < metric_max);
+      return (value.readClassifications().vclassType[0] >= metric_min) && (value.readClassifications().vclassType[0] < metric_max);
     }
     
     @Override
     public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return Integer.toString(veh.otherClassifications.vclassType[0]);
+      return Integer.toString(veh.readClassifications().vclassType[0]);
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.otherClassifications.vclassType[0] = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.getOtherClassifications().vclassType[0] = value.parseInt();
     }
   },
   /**
@@ -408,17 +357,17 @@ public enum VehicleFieldsEnum implements ObservationField {
   vclass1("Type Class (alternate 1)", null, -1) {
     @Override
     public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.otherClassifications.vclassType[1] >= metric_min) && (value.otherClassifications.vclassType[1] < metric_max);
+      return (value.readClassifications().vclassType[1] >= metric_min) && (value.readClassifications().vclassType[1] < metric_max);
     }
     
     @Override
     public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return Integer.toString(veh.otherClassifications.vclassType[1]);
+      return Integer.toString(veh.readClassifications().vclassType[1]);
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.otherClassifications.vclassType[1] = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.getOtherClassifications().vclassType[1] = value.parseInt();
     }
   },
   /**
@@ -427,17 +376,17 @@ public enum VehicleFieldsEnum implements ObservationField {
   vclass2("Type Class (alternate 2)", null, -1) {
     @Override
     public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-      return (value.otherClassifications.vclassType[2] >= metric_min) && (value.otherClassifications.vclassType[2] < metric_max);
+      return (value.readClassifications().vclassType[2] >= metric_min) && (value.readClassifications().vclassType[2] < metric_max);
     }
     
     @Override
     public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return Integer.toString(veh.otherClassifications.vclassType[2]);
+      return Integer.toString(veh.readClassifications().vclassType[2]);
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.otherClassifications.vclassType[2] = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.getOtherClassifications().vclassType[2] = value.parseInt();
     }
   },
   
@@ -449,12 +398,12 @@ public enum VehicleFieldsEnum implements ObservationField {
   vclassl("Length Class", null, -1) {
     @Override
     public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return Integer.toString(veh.otherClassifications.vclassLength);
+      return Integer.toString(veh.readClassifications().vclassLength);
     }
     
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.otherClassifications.vclassLength = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.getOtherClassifications().vclassLength = value.parseInt();
     }
   },
   
@@ -466,12 +415,12 @@ public enum VehicleFieldsEnum implements ObservationField {
   qc("Quality Rating", null, 1) {
     @Override
     public String get(VehicleRec veh, UnitsUsed units) throws Exception {
-      return Integer.toString(veh.otherClassifications.qc);
+      return Integer.toString(veh.readClassifications().qc);
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.otherClassifications.qc = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.getOtherClassifications().qc = value.parseInt();
     }
   },
   
@@ -491,8 +440,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.getTemperature().airC = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.getTemperature().airC = value.parseInt();
     }
   },
 
@@ -512,8 +461,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.age = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.age = value.parseInt();
     }
   },
   
@@ -528,8 +477,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.idTag = value;
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.idTag = value.toString();
     }
   },
   
@@ -548,8 +497,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.mac = units.mac.parse(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.mac = units.mac.parse(value.toString());
     }
   },
   /**
@@ -564,8 +513,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.rssi = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.rssi = value.parseInt();
     }
   },
   /**
@@ -584,8 +533,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.bttype = Integer.parseInt(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.bttype = value.parseInt();
     }
   },
   /**
@@ -601,8 +550,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.bayid = value;
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.bayid = value.toString();
     }
   },
   /**
@@ -615,8 +564,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.latitude = Double.parseDouble(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.latitude = value.parseDouble();
     }
 
     @Override
@@ -634,8 +583,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.longitude = Double.parseDouble(value);
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.longitude = value.parseDouble();
     }
 
     @Override
@@ -655,8 +604,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.img = value;
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.img = value.toString();
     }
   },
 
@@ -671,8 +620,8 @@ public enum VehicleFieldsEnum implements ObservationField {
     }
 
     @Override
-    public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
-      result.imgfile = value;
+    public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+      result.imgfile = value.toString();
     }
   };
 
@@ -682,6 +631,14 @@ public enum VehicleFieldsEnum implements ObservationField {
    * Whether this field is numeric
    */
   private final boolean isNumeric;
+  /**
+   * The FU units of this field, or null if it does not use FU units
+   */
+  private final FUUnits fu;
+  /**
+   * The number of digits after the decimal point of a value in FU units
+   */
+  private final int decimals;
   
   public boolean isNumeric() {
     return isNumeric;
@@ -697,6 +654,23 @@ public enum VehicleFieldsEnum implements ObservationField {
     this.desc = d;
     this.unitsDescription = units;
     this.isNumeric = valueType != 0;
+    this.fu = null;
+    this.decimals = 0;
+  }
+
+  /**
+   * A numeric field in FU units. It is kept in metric units, see {@link #getMetric(VehicleRec)} and {@link #setMetric(double, VehicleRec)}
+   * @param d
+   * @param units
+   * @param fu
+   * @param decimals The number of digits after the decimal point when the value is written
+   */
+  private VehicleFieldsEnum(String d, String units, FUUnits fu, int decimals) {
+    this.desc = d;
+    this.unitsDescription = units;
+    this.isNumeric = true;
+    this.fu = fu;
+    this.decimals = decimals;
   }
 
   @Override
@@ -709,6 +683,93 @@ public enum VehicleFieldsEnum implements ObservationField {
     return desc;
   }
 
+  @Override
+  public void set(String value, UnitsUsed units, VehicleRec result) throws Exception {
+    set(RawFmtTokenizer.of(value), units, result);
+  }
+
+  /**
+   * Fields in FU units are written in the FU units. Other fields override this
+   */
+  @Override
+  public String get(VehicleRec veh, UnitsUsed units) throws Exception {
+    return RawFmtUtils.formatFixed(fu.getConverter(units).toNative(getMetric(veh)), decimals);
+  }
+
+  /**
+   * Fields in FU units are parsed in the FU units and set in metric units. Other fields override this
+   */
+  @Override
+  public void set(RawFmtTokenizer value, UnitsUsed units, VehicleRec result) throws Exception {
+    setMetric(fu.getConverter(units).toMetric(value.parseDouble()), result);
+  }
+
+  /**
+   * Appends the value as {@link #get(VehicleRec, UnitsUsed)} would. Fields in FU units do not create a String
+   * @param veh
+   * @param units
+   * @param result
+   * @throws Exception
+   */
+  public void append(VehicleRec veh, UnitsUsed units, StringBuilder result) throws Exception {
+    if (fu != null)
+      RawFmtUtils.appendFixed(result, fu.getConverter(units).toNative(getMetric(veh)), decimals);
+    else
+      result.append(get(veh, units));
+  }
+
+  /**
+   * 
+   * @param units
+   * @return The converter for the units in the FU header, or null if this field does not use FU units
+   */
+  public UnitConverter getConverter(UnitsUsed units) {
+    return fu != null ? fu.getConverter(units) : null;
+  }
+
+  /**
+   * 
+   * @param veh
+   * @return The value of a field in FU units, in metric units. NaN for other fields
+   */
+  protected double getMetric(VehicleRec veh) {
+    return Double.NaN;
+  }
+
+  /**
+   * Sets a value that is already in metric units. Integer fields drop any fraction, text fields are set to the number
+   * @param metricValue
+   * @param result
+   * @throws Exception If the field cannot hold the value
+   */
+  public void setMetric(double metricValue, VehicleRec result) throws Exception {
+    switch (this) {
+    case vehicleid: result.id = (long)metricValue; break;
+    case naxles: result.naxles = (int)metricValue; break;
+    case delay: result.delaySec = (int)metricValue; break;
+    case chassiscode: result.chassisCode = (long)metricValue; break;
+    case tsig: result.tsig = SignalPhase.values()[(int)metricValue]; break;
+    case vclass: result.getOtherClassifications().vclassType[0] = (int)metricValue; break;
+    case vclass1: result.getOtherClassifications().vclassType[1] = (int)metricValue; break;
+    case vclass2: result.getOtherClassifications().vclassType[2] = (int)metricValue; break;
+    case vclassl: result.getOtherClassifications().vclassLength = (int)metricValue; break;
+    case qc: result.getOtherClassifications().qc = (int)metricValue; break;
+    case tempair: result.getTemperature().airC = (int)metricValue; break;
+    case age: result.age = (int)metricValue; break;
+    case mac: result.mac = (long)metricValue; break;
+    case rssi: result.rssi = (int)metricValue; break;
+    case bttype: result.bttype = (int)metricValue; break;
+    case lat: result.latitude = metricValue; break;
+    case lng: result.longitude = metricValue; break;
+    case color: result.color = RawFmtUtils.formatMetric(metricValue); break;
+    case idtag: result.idTag = RawFmtUtils.formatMetric(metricValue); break;
+    case bayid: result.bayid = RawFmtUtils.formatMetric(metricValue); break;
+    case img: result.img = RawFmtUtils.formatMetric(metricValue); break;
+    case imgfile: result.imgfile = RawFmtUtils.formatMetric(metricValue); break;
+    default: RawFmtUtils.throwException(this, "No metric value", name());
+    }
+  }
+
   protected String notNull(String value) {
     return value == null ? "" : value;
   }
@@ -721,7 +782,34 @@ public enum VehicleFieldsEnum implements ObservationField {
    * @return True if this fields value is between two values (metric units)
    */
   public boolean isValueBetween(VehicleRec value, double metric_min, double metric_max) {
-    return false;
+    double v = getMetric(value);
+    return (v >= metric_min) && (v < metric_max);
+  }
+
+  /**
+   * The units in the FU header of the fields that use them
+   */
+  private static enum FUUnits {
+    speed {
+      @Override
+      UnitConverter getConverter(UnitsUsed units) {
+        return units.getSpeed();
+      }
+    },
+    lengthShort {
+      @Override
+      UnitConverter getConverter(UnitsUsed units) {
+        return units.getLengthShort();
+      }
+    },
+    mass {
+      @Override
+      UnitConverter getConverter(UnitsUsed units) {
+        return units.mass;
+      }
+    };
+
+    abstract UnitConverter getConverter(UnitsUsed units);
   }
 
 }
@@ -19,6 +19,7 @@
 package geocounts.traffic.formats;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -73,7 +74,7 @@ public class VehicleRec extends ObservationRec {
   /**
    * Number of axles
    * @see VehicleFieldsEnum#naxles
-   * @see #axles
+   * @see #getAxles()
    */
   public int naxles;
   
@@ -140,10 +141,45 @@ public class VehicleRec extends ObservationRec {
   public int bttype;
   
   /**
-   * Other well known classifications used on a VehicleRec
+   * Only read by {@link #readClassifications()}, and never changed
+   */
+  private static final WKObservationClassifications NO_CLASSIFICATIONS = new WKObservationClassifications();
+  
+  private WKObservationClassifications otherClassifications;
+  /**
+   * Other well known classifications used on a VehicleRec. This is created when first called
    * @see WKClassifications
    */
-  public final WKObservationClassifications otherClassifications = new WKObservationClassifications();
+  public WKObservationClassifications getOtherClassifications() {
+    if (otherClassifications == null)
+      otherClassifications = new WKObservationClassifications();
+    return otherClassifications;
+  }
+  
+  /**
+   * @deprecated This was a public field, which is now created on demand. Use {@link #getOtherClassifications()}, or {@link #readClassifications()} to read without creating it
+   */
+  @Deprecated
+  public WKObservationClassifications otherClassifications() {
+    return getOtherClassifications();
+  }
+  
+  /**
+   * Reads the classifications without creating them. Use {@link #getOtherClassifications()} to change them
+   * @return The classifications, or classifications that are all 0 if none have been set. This must not be changed
+   */
+  public WKObservationClassifications readClassifications() {
+    return otherClassifications != null ? otherClassifications : NO_CLASSIFICATIONS;
+  }
+  
+  /**
+   * 
+   * @return The primary type classification, or 0 if none has been set
+   * @see WKObservationClassifications#vclassType
+   */
+  public int getVehType() {
+    return otherClassifications != null ? otherClassifications.vclassType[0] : 0;
+  }
   
   /**
    * Duration of time in seconds a vehicle was stopped while being observed (stopped or parked)
@@ -183,7 +219,36 @@ public class VehicleRec extends ObservationRec {
     }
   }
   
-  public final List<AxleRec> axles = new ArrayList<AxleRec>();
+  private List<AxleRec> axles;
+  
+  /**
+   * The list is created when first called
+   * @return The axles, in order
+   * @see #readAxles()
+   */
+  public List<AxleRec> getAxles() {
+    if (axles == null)
+      axles = new ArrayList<AxleRec>(4);
+    return axles;
+  }
+  
+  /**
+   * @deprecated This was a public field, which is now created on demand. Use {@link #getAxles()}, or {@link #readAxles()} to read without creating it
+   */
+  @Deprecated
+  public List<AxleRec> axles() {
+    return getAxles();
+  }
+  
+  /**
+   * Reads the axles without creating the list. Use {@link #getAxles()} or {@link #addAxle()} to change them
+   * @return The axles, in order, or an empty list if none have been added. This must not be changed
+   */
+  public List<AxleRec> readAxles() {
+    if (axles == null)
+      return Collections.<AxleRec>emptyList();
+    return axles;
+  }
   
   /**
    * 
@@ -191,10 +256,17 @@ public class VehicleRec extends ObservationRec {
    */
   public AxleRec addAxle() {
     AxleRec result = new AxleRec();
+    if (axles == null)
+      axles = new ArrayList<AxleRec>(4);
     axles.add(result);
     return result;
   }
   
+  public void clearAxles() {
+    if (axles != null)
+      axles.clear();
+  }
+  
   public List<AxleGroupRec> axleGroups;
   
   public AxleGroupRec addGroup(int fromAxle, int toAxle) {
@@ -204,7 +276,7 @@ public class VehicleRec extends ObservationRec {
     axleGroups.add(aGroup);
     AxleRec vAxle;
     for (int i=fromAxle; i<(toAxle+1); i++) {
-      vAxle = axles.get(i);
+      vAxle = readAxles().get(i);
       aGroup.addAxle( vAxle );
     }
     return aGroup;
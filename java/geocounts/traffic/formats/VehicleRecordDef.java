@@ -19,6 +19,7 @@
 package geocounts.traffic.formats;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -33,6 +34,14 @@ public class VehicleRecordDef extends RawTrafficDataHeaderElement implements Ite
 
   protected final List<ObservationField> fields = new ArrayList<ObservationField>();
   private final TimeZoneData SZ;
+  
+  /**
+   * The slot of each {@link UserDefinedObservationField}, which is its index in the user defined values of an {@link ObservationRec}.
+   * A slot is never reused, so values already set on an observation keep their meaning when fields are removed
+   */
+  private final HashMap<String, Integer> userDefinedSlots = new HashMap<String, Integer>();
+  private final List<String> userDefinedKeys = new ArrayList<String>();
+  
   protected VehicleRecordDef(TimeZoneData SZ) {
     this.SZ = SZ;
   }
@@ -54,11 +63,41 @@ public class VehicleRecordDef extends RawTrafficDataHeaderElement implements Ite
   public boolean addField(ObservationField field) {
     if (!fields.contains(field)) {
       fields.add(field);
+      if (field instanceof UserDefinedObservationField)
+        addUserDefinedSlot((UserDefinedObservationField)field);
       return true;
     }
     return false;
   }
   
+  private void addUserDefinedSlot(UserDefinedObservationField field) {
+    Integer slot = userDefinedSlots.get(field.getId());
+    if (slot == null) {
+      slot = userDefinedKeys.size();
+      userDefinedSlots.put(field.getId(), slot);
+      userDefinedKeys.add(field.getId());
+    }
+    field.setSlot(this, slot);
+  }
+  
+  /**
+   * 
+   * @param key
+   * @return The slot of the {@link UserDefinedObservationField} or -1 if it has never been added
+   */
+  int getUserDefinedSlot(String key) {
+    Integer result = userDefinedSlots.get(key);
+    return result != null ? result : -1;
+  }
+  
+  int numberOfUserDefinedSlots() {
+    return userDefinedKeys.size();
+  }
+  
+  String getUserDefinedKey(int slot) {
+    return userDefinedKeys.get(slot);
+  }
+  
   public void removeField(ObservationField f) {
     fields.remove(f);
   }
@@ -104,7 +143,18 @@ public class VehicleRecordDef extends RawTrafficDataHeaderElement implements Ite
   } */
   
   public VehicleRec create(int channelID, long timeUTCNotAccountedFor) {
-    return VehicleRec.createNoTZ(channelID, timeUTCNotAccountedFor - SZ.getRecordedTimestampOffset());
+    VehicleRec result = VehicleRec.createNoTZ(channelID, getObservationTime(timeUTCNotAccountedFor));
+    result.schema = this;
+    return result;
+  }
+  
+  /**
+   * 
+   * @param timeUTCNotAccountedFor
+   * @return The time of an observation {@link #create(int, long) created} with this time
+   */
+  long getObservationTime(long timeUTCNotAccountedFor) {
+    return timeUTCNotAccountedFor - SZ.getRecordedTimestampOffset();
   }
   
   @Override
@@ -120,17 +120,16 @@ public class VehicleTallyRec extends RawTrafficDataTrafficElement implements Com
   
   /**
    * Safely add to the {@link TrafficMonitoringTallyCountFields#countsVehClass}. If the vclass does not specify a defined type
-   * this will <i>not</i> throw ArrayIndexOutOfBoundsException
+   * this will <i>not</i> throw ArrayIndexOutOfBoundsException, and the count is not added
    * @param vclass Vehicle classified type
    * @param count Number to add
    * @return Whether the data was added
    */
   public boolean addVehType(int vclass, int addCount) {
-    try {
-      this.countsVehType[vclass] += addCount;
-      return true;
-    } catch (ArrayIndexOutOfBoundsException possible) {}
-    return false;
+    if ((vclass < 0) || (vclass >= this.countsVehType.length))
+      return false;
+    this.countsVehType[vclass] += addCount;
+    return true;
   }
   
   /**
@@ -138,11 +137,10 @@ public class VehicleTallyRec extends RawTrafficDataTrafficElement implements Com
    * @return True if the count was added
    */
   public boolean addVehSpeed(int vehSpeedBin, int addCount) {
-    try {
-      this.countsSpeed[vehSpeedBin] += addCount;
-      return true;
-    } catch (ArrayIndexOutOfBoundsException possible) {}
-    return false;
+    if ((vehSpeedBin < 0) || (vehSpeedBin >= this.countsSpeed.length))
+      return false;
+    this.countsSpeed[vehSpeedBin] += addCount;
+    return true;
   }
   
   /**
@@ -150,11 +148,10 @@ public class VehicleTallyRec extends RawTrafficDataTrafficElement implements Com
    * @return True if the count was added
    */
   public boolean addVehLength(int vehLengthBin, int addCount) {
-    try {
-      this.countsLength[vehLengthBin] += addCount;
-      return true;
-    } catch (ArrayIndexOutOfBoundsException possible) {}
-    return false;
+    if ((vehLengthBin < 0) || (vehLengthBin >= this.countsLength.length))
+      return false;
+    this.countsLength[vehLengthBin] += addCount;
+    return true;
   }
 
   @Override
@@ -197,6 +194,8 @@ public class VehicleTallyRec extends RawTrafficDataTrafficElement implements Com
   public long getTimeActualEnd() {
     if (T.TD.periodsPerHour() > 1) // subhourly tallies
       return super.getTime() + period*T.TD.getMSecs();
+    if ((T.TD.getMSecs() == 0) && T.isRecording()) // months and years
+      return T.TD.getPeriodEnd(super.getTime() + subtractTimezone) - subtractTimezone;
     return super.getTime() + T.TD.getMSecs();  // hourly or longer tallies
   }
   
@@ -221,6 +220,11 @@ public class VehicleTallyRec extends RawTrafficDataTrafficElement implements Com
       countsLength[i] += source.countsLength[i];
     for (int i=0; i<countsSpeed.length; i++)
       countsSpeed[i] += source.countsSpeed[i];
+    if ((countsSpeedByLength != null) && (source.countsSpeedByLength != null)) {
+      for (int i=0; i<countsSpeedByLength.length; i++)
+        for (int j=0; j<countsSpeedByLength[i].length; j++)
+          countsSpeedByLength[i][j] += source.countsSpeedByLength[i][j];
+    }
     
     if ((trafficmonitoring != null) && (source.trafficmonitoring != null)) {
       trafficmonitoring.addToTotals(source.trafficmonitoring);